@@ -0,0 +1,180 @@
+package ict.mgame.bingogame;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.CardSet;
+import ict.mgame.bingogame.engine.Metrics;
+
+/**
+ * Draws a whole bingo card, of whatever grid its {@link CardGeometry} has, on one Canvas from one card of a {@link CardSet}. Paints and cell labels are allocated
+ * once, so binding a new card or marking a cell never allocates; marking invalidates only that cell's rect and the
+ * cells whose near-win highlight changed with it. Unmarked cells that would complete a win pattern are highlighted.
+ */
+public class BingoCardView extends View {
+    private static final int MARKED_COLOR = 0xFF00FF00;
+    private static final int UNMARKED_COLOR = 0xFFFFFFFF;
+    private static final int NEAR_WIN_COLOR = 0xFFFFF59D;
+    private static final int TEXT_COLOR = 0xFF000000;
+    private static final int DIVIDER_COLOR = 0xFFDDDDDD;
+    private static final int BLANK_COLOR = 0xFFEEEEEE;
+    private static final int CELL_PADDING_PX = 16;
+
+    private static final Metrics.Timer MEASURE = Metrics.timer("card.measure");
+    private static final Metrics.Timer DRAW = Metrics.timer("card.onDraw");
+
+    // Labels for 0 (FREE) and every possible ball, shared by every card
+    private static final String[] LABELS = new String[CardGeometry.MAX_BALLS + 1];
+
+    static {
+        LABELS[0] = "FREE";
+        for (int i = 1; i < LABELS.length; i++) {
+            LABELS[i] = String.valueOf(i);
+        }
+    }
+
+    private final Paint markedPaint = new Paint();
+    private final Paint unmarkedPaint = new Paint();
+    private final Paint nearWinPaint = new Paint();
+    private final Paint dividerPaint = new Paint();
+    private final Paint blankPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private CardSet cards;
+    private int cardIndex;
+    // The near-win cells as last drawn
+    private long drawnOneAwayCells;
+    private int rows = CardGeometry.BINGO_75.getRows();
+    private int columns = CardGeometry.BINGO_75.getColumns();
+    private float cellWidth;
+    private float cellHeight;
+    private float textBaselineOffset;
+
+    public BingoCardView(Context context) {
+        this(context, null);
+    }
+
+    public BingoCardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        markedPaint.setColor(MARKED_COLOR);
+        unmarkedPaint.setColor(UNMARKED_COLOR);
+        nearWinPaint.setColor(NEAR_WIN_COLOR);
+        dividerPaint.setColor(DIVIDER_COLOR);
+        dividerPaint.setStrokeWidth(1f);
+        blankPaint.setColor(BLANK_COLOR);
+        textPaint.setColor(TEXT_COLOR);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 20, getResources().getDisplayMetrics()));
+        // Centre the text vertically within a cell
+        textBaselineOffset = -(textPaint.ascent() + textPaint.descent()) / 2f;
+    }
+
+    /**
+     * Binds the card to render and redraws it.
+     *
+     * @param cards     The card set holding the card and mark state.
+     * @param cardIndex The card to render.
+     */
+    public void bind(CardSet cards, int cardIndex) {
+        this.cards = cards;
+        this.cardIndex = cardIndex;
+        CardGeometry geometry = cards.getGeometry();
+        if (geometry.getRows() != rows || geometry.getColumns() != columns) {
+            rows = geometry.getRows();
+            columns = geometry.getColumns();
+            updateCellSize(getWidth(), getHeight());
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    /**
+     * Redraws a single cell after it has been marked, along with any cell that became or stopped being a near win.
+     *
+     * @param cell The cell index (row * columns + col).
+     */
+    public void invalidateCell(int cell) {
+        invalidateCellRect(cell);
+        if (cards == null || cardIndex >= cards.getCardCount()) return;
+        long changed = (drawnOneAwayCells ^ cards.getOneAwayCells(cardIndex)) & ~(1L << cell);
+        while (changed != 0) {
+            invalidateCellRect(Long.numberOfTrailingZeros(changed));
+            changed &= changed - 1;
+        }
+    }
+
+    private void invalidateCellRect(int cell) {
+        int col = cell % columns;
+        int row = cell / columns;
+        invalidate((int) (col * cellWidth), (int) (row * cellHeight),
+                (int) Math.ceil((col + 1) * cellWidth), (int) Math.ceil((row + 1) * cellHeight));
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        long start = Metrics.start();
+        try {
+            int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+            float rowHeight = textPaint.descent() - textPaint.ascent() + 2 * CELL_PADDING_PX;
+            int height = resolveSize((int) Math.ceil(rowHeight * rows), heightMeasureSpec);
+            setMeasuredDimension(width, height);
+        } finally {
+            MEASURE.stop(start);
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateCellSize(w, h);
+    }
+
+    private void updateCellSize(int w, int h) {
+        cellWidth = w / (float) columns;
+        cellHeight = h / (float) rows;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (cards == null || cardIndex >= cards.getCardCount()) return;
+        long start = Metrics.start();
+        try {
+            long marks = cards.getMarks(cardIndex);
+            long oneAwayCells = cards.getOneAwayCells(cardIndex);
+            drawnOneAwayCells = oneAwayCells;
+            int freeCell = cards.getGeometry().getFreeCell();
+            for (int row = 0; row < rows; row++) {
+                float top = row * cellHeight;
+                for (int col = 0; col < columns; col++) {
+                    int cell = row * columns + col;
+                    float left = col * cellWidth;
+                    int number = cards.getNumber(cardIndex, cell);
+                    if (number == 0 && cell != freeCell) {
+                        // Blank cell of a 90-ball ticket
+                        canvas.drawRect(left, top, left + cellWidth, top + cellHeight, blankPaint);
+                        continue;
+                    }
+                    long bit = 1L << cell;
+                    canvas.drawRect(left, top, left + cellWidth, top + cellHeight, (marks & bit) != 0 ? markedPaint
+                            : (oneAwayCells & bit) != 0 ? nearWinPaint : unmarkedPaint);
+                    canvas.drawText(LABELS[number], left + cellWidth / 2f,
+                            top + cellHeight / 2f + textBaselineOffset, textPaint);
+                }
+            }
+            for (int i = 1; i < columns; i++) {
+                canvas.drawLine(i * cellWidth, 0, i * cellWidth, getHeight(), dividerPaint);
+            }
+            for (int i = 1; i < rows; i++) {
+                canvas.drawLine(0, i * cellHeight, getWidth(), i * cellHeight, dividerPaint);
+            }
+        } finally {
+            DRAW.stop(start);
+        }
+    }
+}
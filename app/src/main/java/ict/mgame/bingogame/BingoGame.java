@@ -1,133 +1,88 @@
 package ict.mgame.bingogame;
 
-import android.content.Context;
-import android.view.Gravity;
-import android.widget.GridLayout;
+import android.util.TypedValue;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
 
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.CardSet;
+import ict.mgame.bingogame.engine.Metrics;
+import ict.mgame.bingogame.engine.PatternRegistry;
+
+/**
+ * Renders the cards of a {@link BingoEngine} as a virtualized list of {@link BingoCardView}s. The engine holds all
+ * game state; the views are only a rendering of it.
+ */
 public class BingoGame {
-    private List<Integer> drawnNumbers = new ArrayList<>();
-    private Set<Integer> cardNumbers = new HashSet<>();
-    private TextView[][] cells = new TextView[5][5];
-    private boolean[][] marked = new boolean[5][5];
-    private Random random = new Random();
-    private GridLayout bingoGrid;
+    private static final Metrics.Timer PERFORM_DRAW = Metrics.timer("game.performDraw");
+    private static final Metrics.Timer CHECK_FOR_BINGO = Metrics.timer("game.checkForBingo");
+
+    private final BingoEngine engine = new BingoEngine();
+    private final CardListAdapter adapter;
+    private RecyclerView cardList;
     private TextView drawnNumberText;
-    private Context context;
 
-    public BingoGame(Context context, GridLayout bingoGrid, TextView drawnNumberText) {
-        this.context = context;
-        this.bingoGrid = bingoGrid;
+    public BingoGame(RecyclerView cardList, TextView drawnNumberText) {
+        this.cardList = cardList;
         this.drawnNumberText = drawnNumberText;
+        int spacingPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 12,
+                cardList.getResources().getDisplayMetrics());
+        adapter = new CardListAdapter(engine.getCards(), spacingPx);
+        cardList.setLayoutManager(new LinearLayoutManager(cardList.getContext()));
+        cardList.setHasFixedSize(true);
+        cardList.setAdapter(adapter);
     }
 
     /**
-     * Loads a saved bingo card state into the UI, including marked cells.
+     * Rebuilds a seeded game from its seed and draw count; the engine deals the cards again and replays the calls.
      *
-     * @param card   The 5x5 array representing the bingo card numbers.
-     * @param marked The 5x5 boolean array indicating which cells are marked.
+     * @param geometry  The variant of the game.
+     * @param cardCount The number of cards.
+     * @param seed      The game's seed.
+     * @param drawIndex The number of calls made so far.
      */
-    public void loadBingoCard(int[][] card, boolean[][] marked) {
-        bingoGrid.removeAllViews();
-        cardNumbers.clear();
-        setupCardUI(card, marked);
-        this.marked = marked;
+    public void resumeGame(CardGeometry geometry, int cardCount, long seed, int drawIndex) {
+        engine.resumeGame(geometry, cardCount, seed, drawIndex);
+        adapter.notifyDataSetChanged();
     }
 
     /**
-     * Initializes a new random bingo card and sets up the UI.
+     * Loads saved cards and replays the called numbers onto them; for games saved before seeds.
+     *
+     * @param geometry  The geometry of the saved cards.
+     * @param cards     The card numbers, one per cell by cell index.
+     * @param cardCount The number of cards.
+     * @param drawn     The numbers already called, in call order.
      */
-    public void initializeBingoCard() {
-        int[][] card = generateCard();
-        bingoGrid.removeAllViews();
-        setupCardUI(card, marked); // marked is already reset
-    }
-
-    private int[][] generateCard() {
-        int[][] card = new int[5][5];
-        for (int col = 0; col < 5; col++) {
-            Set<Integer> columnNumbers = new HashSet<>();
-            int min = col * 15 + 1;
-            int max = min + 14;
-            while (columnNumbers.size() < 5) {
-                int num = random.nextInt(15) + min;
-                if (!columnNumbers.contains(num)) {
-                    columnNumbers.add(num);
-                }
-            }
-            List<Integer> sorted = new ArrayList<>(columnNumbers);
-            java.util.Collections.sort(sorted);
-            for (int row = 0; row < 5; row++) {
-                card[row][col] = (row == 2 && col == 2) ? 0 : sorted.get(row);
-            }
-        }
-        return card;
+    public void loadGame(CardGeometry geometry, int[] cards, int cardCount, List<Integer> drawn) {
+        engine.setCards(geometry, cards, cardCount);
+        engine.restoreDrawnNumbers(drawn);
+        adapter.notifyDataSetChanged();
     }
 
     /**
-     * Sets up the bingo card UI in the GridLayout using the provided card and marked states.
+     * Initializes new random bingo cards and sets up the UI.
      *
-     * @param card   The 5x5 array of card numbers.
-     * @param marked The 5x5 boolean array for marked cells.
+     * @param geometry  The card geometry to play.
+     * @param cardCount The number of cards to play.
      */
-    private void setupCardUI(int[][] card, boolean[][] marked) {
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
-                TextView cell = new TextView(context);
-                int num = card[row][col];
-                cell.setText(num == 0 ? "FREE" : String.valueOf(num));
-                cell.setTextSize(20);
-                cell.setPadding(16, 16, 16, 16);
-                cell.setTextColor(0xFF000000);
-                cell.setGravity(Gravity.CENTER);
-                cell.setBackgroundColor(marked[row][col] ? 0xFF00FF00 : 0xFFFFFFFF);
-                GridLayout.LayoutParams params = new GridLayout.LayoutParams();
-                params.width = 0;
-                params.height = GridLayout.LayoutParams.WRAP_CONTENT;
-                params.columnSpec = GridLayout.spec(col, 1f);
-                params.rowSpec = GridLayout.spec(row, 1f);
-                bingoGrid.addView(cell, params);
-                cells[row][col] = cell;
-                if (num != 0) {
-                    cardNumbers.add(num);
-                } else if (num == 0) {
-                    marked[2][2] = true;
-                }
-            }
-        }
+    public void initializeBingoCards(CardGeometry geometry, int cardCount) {
+        engine.newGame(geometry, cardCount);
+        adapter.notifyDataSetChanged();
     }
 
     public boolean checkForBingo() {
-        // Rows
-        for (int row = 0; row < 5; row++) {
-            if (isLineMarked(row, -1, true)) return true;
+        long start = Metrics.start();
+        try {
+            return engine.hasBingo();
+        } finally {
+            CHECK_FOR_BINGO.stop(start);
         }
-        // Columns
-        for (int col = 0; col < 5; col++) {
-            if (isLineMarked(-1, col, false)) return true;
-        }
-        // Diagonals
-        boolean diag1 = true, diag2 = true;
-        for (int i = 0; i < 5; i++) {
-            if (!marked[i][i]) diag1 = false;
-            if (!marked[i][4 - i]) diag2 = false;
-        }
-        return diag1 || diag2;
-    }
-
-    private boolean isLineMarked(int row, int col, boolean isRow) {
-        for (int i = 0; i < 5; i++) {
-            if (isRow ? !marked[row][i] : !marked[i][col]) {
-                return false;
-            }
-        }
-        return true;
     }
 
     /**
@@ -140,63 +95,105 @@ public class BingoGame {
      * @param coinsDisplay Coins display TextView (not used here).
      */
     public void performDraw(int coins, DatabaseHelper dbHelper, String username, TextView coinsDisplay) {
-        if (coins < 1 || drawnNumbers.size() >= 75) {
+        if (coins < 1 || engine.getDrawCount() >= engine.getGeometry().getMaxNumber()) {
             return; // Assume caller handles toasts
         }
 
         // Deduct coin (caller updates DB and display)
 
-        int newNumber;
-        do {
-            newNumber = random.nextInt(75) + 1;
-        } while (drawnNumbers.contains(newNumber));
-
-        drawnNumbers.add(newNumber);
-        drawnNumberText.setText("Drawn: " + newNumber);
-
-        // Mark if on card
-        boolean found = false;
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
-                if (cells[row][col].getText().toString().equals(String.valueOf(newNumber))) {
-                    marked[row][col] = true;
-                    cells[row][col].setBackgroundColor(0xFF00FF00);
-                    found = true;
-                    break;
-                }
+        long start = Metrics.start();
+        try {
+            int newNumber = engine.draw();
+            drawnNumberText.setText("Drawn: " + newNumber);
+
+            // Redraw only the cards holding the number, and only the marked cell on each
+            CardSet cards = engine.getCards();
+            for (int p = cards.postingStart(newNumber), end = cards.postingEnd(newNumber); p < end; p++) {
+                adapter.notifyItemChanged(cards.postingCard(p), cards.postingCell(p));
+            }
+            if (cards.getNewWinnerCount() > 0) {
+                cardList.scrollToPosition(cards.getNewWinner(0));
             }
-            if (found) break;
+        } finally {
+            PERFORM_DRAW.stop(start);
         }
     }
 
     /**
-     * Resets and restarts the game by clearing state and initializing a new card.
+     * Resets and restarts the game by clearing state and initializing new cards.
+     *
+     * @param geometry  The card geometry to play.
+     * @param cardCount The number of cards to play.
      */
-    public void performRestart() {
-        drawnNumbers.clear();
-        cardNumbers.clear();
-        marked = new boolean[5][5];
+    public void performRestart(CardGeometry geometry, int cardCount) {
         drawnNumberText.setText("Drawn Number");
-        initializeBingoCard();
+        initializeBingoCards(geometry, cardCount);
+    }
+
+    /**
+     * Returns the first card (0-based) that completed a line on the last draw, or -1 if none did.
+     */
+    public int getNewWinningCard() {
+        CardSet cards = engine.getCards();
+        return cards.getNewWinnerCount() > 0 ? cards.getNewWinner(0) : -1;
+    }
+
+    /**
+     * Returns the name of the pattern completed by {@link #getNewWinningCard()}, or null if no card won on the last draw.
+     */
+    public String getNewWinningPatternName() {
+        int card = getNewWinningCard();
+        if (card < 0) return null;
+        CardSet cards = engine.getCards();
+        return cards.getPatterns().get(cards.getWinningPattern(card)).getName();
+    }
+
+    /**
+     * Sets the active win patterns for the current cards. Starting a game of another geometry resets them to that
+     * geometry's lines.
+     */
+    public void setPatterns(PatternRegistry patterns) {
+        engine.setPatterns(patterns);
+        // Wins and near-win highlights follow the patterns
+        adapter.notifyDataSetChanged();
+    }
+
+    public int getCardCount() {
+        return engine.getCardCount();
+    }
+
+    public BingoEngine getEngine() {
+        return engine;
     }
 
     public int[][] getCard() {
-        int[][] card = new int[5][5];
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
-                String text = cells[row][col].getText().toString();
-                card[row][col] = "FREE".equals(text) ? 0 : Integer.parseInt(text);
-            }
-        }
-        return card;
+        return engine.getCard();
     }
 
+    /**
+     * Returns a read-only view of the called numbers in call order.
+     */
     public List<Integer> getDrawnNumbers() {
-        return drawnNumbers;
+        return engine.getDrawnNumbers();
+    }
+
+    public int getDrawCount() {
+        return engine.getDrawCount();
+    }
+
+    public boolean isCalled(int number) {
+        return engine.isCalled(number);
     }
 
     public boolean[][] getMarked() {
-        return marked;
+        return engine.getMarked();
+    }
+
+    /**
+     * Returns the mark state of the first card, with bit (row * columns + col) set for a marked cell.
+     */
+    public long getMarkedMask() {
+        return engine.getMarkedMask();
     }
 
     /**
@@ -207,4 +204,4 @@ public class BingoGame {
     public void setDrawEnabled(boolean enabled) {
         // If needed, expose for bingo check
     }
-}
\ No newline at end of file
+}
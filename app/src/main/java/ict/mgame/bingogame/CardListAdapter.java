@@ -0,0 +1,74 @@
+package ict.mgame.bingogame;
+
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+import ict.mgame.bingogame.engine.CardSet;
+import ict.mgame.bingogame.engine.Metrics;
+
+/**
+ * Virtualized list of the player's cards: only the visible cards have a {@link BingoCardView}, which is rebound
+ * as the list scrolls. A draw notifies just the cards holding the number, with the marked cell as payload.
+ */
+public class CardListAdapter extends RecyclerView.Adapter<CardListAdapter.CardViewHolder> {
+    private static final Metrics.Timer BIND = Metrics.timer("card.bind");
+
+    private final CardSet cards;
+    private final int cardSpacingPx;
+
+    public CardListAdapter(CardSet cards, int cardSpacingPx) {
+        this.cards = cards;
+        this.cardSpacingPx = cardSpacingPx;
+    }
+
+    static class CardViewHolder extends RecyclerView.ViewHolder {
+        final BingoCardView cardView;
+
+        CardViewHolder(BingoCardView cardView) {
+            super(cardView);
+            this.cardView = cardView;
+        }
+    }
+
+    @NonNull
+    @Override
+    public CardViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        BingoCardView cardView = new BingoCardView(parent.getContext());
+        RecyclerView.LayoutParams params = new RecyclerView.LayoutParams(
+                RecyclerView.LayoutParams.MATCH_PARENT, RecyclerView.LayoutParams.WRAP_CONTENT);
+        params.bottomMargin = cardSpacingPx;
+        cardView.setLayoutParams(params);
+        return new CardViewHolder(cardView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CardViewHolder holder, int position) {
+        long start = Metrics.start();
+        try {
+            holder.cardView.bind(cards, position);
+        } finally {
+            BIND.stop(start);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CardViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        // Payloads are the cells marked since the last bind
+        for (Object payload : payloads) {
+            holder.cardView.invalidateCell((Integer) payload);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return cards.getCardCount();
+    }
+}
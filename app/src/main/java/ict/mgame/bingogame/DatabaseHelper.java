@@ -5,31 +5,143 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.Nullable;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.GameStateCodec;
+import ict.mgame.bingogame.engine.Leaderboard;
+import ict.mgame.bingogame.engine.Metrics;
+
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "bingo.db";
-    private static final int DATABASE_VERSION = 4; // Bumped for game state columns
+    private static final int DATABASE_VERSION = 11; // Bumped for the leaderboard indexes
+
+    // Profile snapshots shared by every helper instance in the process, dropped on any write to the user's row
+    private static final Map<String, UserProfile> profileCache = new HashMap<>();
+    private static long profileCacheGeneration;
+
+    // Ranks by wins for the whole table, loaded on first use and kept current by every write to wins; null until loaded.
+    // Guarded by leaderboardLock; loads are serialized by leaderboardLoadLock
+    public static final int LEADERBOARD_TOP_SIZE = 100;
+    private static final Object leaderboardLock = new Object();
+    private static final Object leaderboardLoadLock = new Object();
+    private static Leaderboard leaderboard;
+
+    // Hot-path writes, compiled once per helper and reused
+    private static final String SQL_SET_COINS = "UPDATE users SET coins = ? WHERE username = ?";
+    private static final String SQL_ADD_COINS = "UPDATE users SET coins = coins + ? WHERE username = ?";
+    private static final String SQL_ACCRUE_COINS = "UPDATE users SET coins = coins + ?, last_accrual_at = ? WHERE username = ?";
+    private static final String SQL_ADD_WINS = "UPDATE users SET wins = wins + ? WHERE username = ?";
+    private static final String SQL_GET_WINS = "SELECT wins FROM users WHERE username = ?";
+    private static final String SQL_APPEND_DRAW = "INSERT OR REPLACE INTO draws (game_id, seq, number) VALUES (?, ?, ?)";
+    private static final String SQL_SET_DRAW_INDEX = "UPDATE games SET draw_index = ? WHERE id = ?";
+    private static final String SQL_SET_JOURNAL_CHECKPOINT = "UPDATE journal_checkpoint SET last_seq = ? WHERE id = 0";
+
+    private static final Metrics.Timer DB_LOAD_LEADERBOARD = Metrics.timer("db.loadLeaderboard");
+    private static final Metrics.Counter PROFILE_CACHE_HITS = Metrics.counter("db.profileCache.hit");
+    private static final Metrics.Counter PROFILE_CACHE_MISSES = Metrics.counter("db.profileCache.miss");
+
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
 
     public DatabaseHelper(@Nullable Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Readers no longer block on the write-behind writer, and commits skip the rollback journal fsyncs
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
-     * Called when the database is created for the first time. Creates the users table with all columns.
+     * Returns the compiled statement for the SQL, compiling it on first use. Callers must hold the statement's lock
+     * while binding and executing it.
+     *
+     * @param sql The statement text.
+     * @return The cached statement with its bindings cleared.
+     */
+    private SQLiteStatement statement(String sql) {
+        synchronized (statements) {
+            SQLiteStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = getWritableDatabase().compileStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (statements) {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
+            }
+            statements.clear();
+        }
+        super.close();
+    }
+
+    /**
+     * Called when the database is created for the first time. Creates the users table with all columns and the game tables.
      *
      * @param db The database.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL("CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE, password TEXT, wins INTEGER DEFAULT 0, coins INTEGER DEFAULT 20, daily_resets INTEGER DEFAULT 0, last_reset_date TEXT DEFAULT '', card_state TEXT DEFAULT '', drawn_state TEXT DEFAULT '', marked_state TEXT DEFAULT '')");
+        db.execSQL("CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE, password TEXT, wins INTEGER DEFAULT 0, coins INTEGER DEFAULT 20, daily_resets INTEGER DEFAULT 0, last_reset_date TEXT DEFAULT '', last_accrual_at INTEGER DEFAULT 0)");
+        createGameTables(db);
+        createJournalCheckpointTable(db);
+        createLeaderboardIndexes(db);
+    }
+
+    /**
+     * Indexes users in leaderboard order, so the top of the board and each page after it are read by seeking the index
+     * instead of sorting the table.
+     *
+     * @param db The database.
+     */
+    private void createLeaderboardIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX users_wins ON users (wins DESC, username)");
+        db.execSQL("CREATE INDEX users_coins ON users (coins DESC, username)");
+    }
+
+    /**
+     * Creates the games table (one row per game played, at most one active per user) and the append-only draws log.
+     *
+     * @param db The database.
+     */
+    private void createGameTables(SQLiteDatabase db) {
+        createGamesTable(db);
+        db.execSQL("CREATE TABLE draws (game_id INTEGER NOT NULL, seq INTEGER NOT NULL, number INTEGER NOT NULL, PRIMARY KEY (game_id, seq)) WITHOUT ROWID");
+    }
+
+    /**
+     * Creates the games table. variant is the CardGeometry id. A seeded game is its card_count, seed and draw_index
+     * alone, and the engine deals and replays it from those; card is null. Games saved before seeds instead hold one
+     * byte per cell for each card in card, with their calls in the draws log.
+     *
+     * @param db The database.
+     */
+    private void createGamesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE games (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT NOT NULL, variant INTEGER NOT NULL DEFAULT 1, card_count INTEGER NOT NULL DEFAULT 1, seed INTEGER, draw_index INTEGER NOT NULL DEFAULT 0, card BLOB, active INTEGER DEFAULT 1, created_at INTEGER DEFAULT 0)");
+        db.execSQL("CREATE INDEX games_username_active ON games (username, active)");
+    }
+
+    /**
+     * Creates the single-row table holding the sequence number of the last journal record committed to this database.
+     *
+     * @param db The database.
+     */
+    private void createJournalCheckpointTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE journal_checkpoint (id INTEGER PRIMARY KEY CHECK (id = 0), last_seq INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO journal_checkpoint (id, last_seq) VALUES (0, 0)");
     }
 
     /**
@@ -54,6 +166,83 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             db.execSQL("ALTER TABLE users ADD COLUMN drawn_state TEXT DEFAULT ''");
             db.execSQL("ALTER TABLE users ADD COLUMN marked_state TEXT DEFAULT ''");
         }
+        if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE users ADD COLUMN game_state BLOB");
+            migrateTextGameStates(db);
+        }
+        if (oldVersion < 6) {
+            createGameTables(db);
+            migrateBinaryGameStates(db);
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE users ADD COLUMN last_accrual_at INTEGER DEFAULT 0");
+            // Passive income starts now for existing users rather than at the epoch
+            db.execSQL("UPDATE users SET last_accrual_at = ?", new Object[]{System.currentTimeMillis()});
+        }
+        if (oldVersion >= 6 && oldVersion < 8) {
+            // Tables created by the version 6 step above already have the column; existing games are 75-ball
+            db.execSQL("ALTER TABLE games ADD COLUMN variant INTEGER NOT NULL DEFAULT 1");
+        }
+        if (oldVersion >= 6 && oldVersion < 9) {
+            // card becomes nullable, which SQLite can only do by rebuilding the table; existing games keep their
+            // cards and draw logs
+            db.execSQL("ALTER TABLE games RENAME TO games_v8");
+            db.execSQL("DROP INDEX IF EXISTS games_username_active");
+            createGamesTable(db);
+            db.execSQL("INSERT INTO games (id, username, variant, card, active, created_at) SELECT id, username, variant, card, active, created_at FROM games_v8");
+            db.execSQL("DROP TABLE games_v8");
+        }
+        if (oldVersion < 10) {
+            createJournalCheckpointTable(db);
+        }
+        if (oldVersion < 11) {
+            createLeaderboardIndexes(db);
+        }
+    }
+
+    /**
+     * Moves each users.game_state blob into an active games row plus its draws log, then clears the blob column.
+     *
+     * @param db The database being upgraded.
+     */
+    private void migrateBinaryGameStates(SQLiteDatabase db) {
+        Cursor cursor = db.query("users", new String[]{"username", "game_state"}, "game_state IS NOT NULL", null, null, null, null);
+        while (cursor.moveToNext()) {
+            byte[] blob = cursor.getBlob(1);
+            if (!GameStateCodec.isValid(blob)) continue;
+            long gameId = insertGame(db, cursor.getString(0), CardGeometry.BINGO_75.getId(), toCardBlob(GameStateCodec.decodeCard(blob)));
+            List<Integer> drawn = GameStateCodec.decodeDrawn(blob);
+            for (int seq = 0; seq < drawn.size(); seq++) {
+                insertDraw(db, gameId, seq, drawn.get(seq));
+            }
+        }
+        cursor.close();
+        db.execSQL("UPDATE users SET game_state = NULL");
+    }
+
+    /**
+     * Converts the comma-separated card_state, drawn_state and marked_state columns into the binary game_state column.
+     * Rows with no saved or malformed state are left without a game_state. The text columns are cleared afterwards.
+     *
+     * @param db The database being upgraded.
+     */
+    private void migrateTextGameStates(SQLiteDatabase db) {
+        Cursor cursor = db.query("users", new String[]{"id", "card_state", "drawn_state", "marked_state"}, "card_state != ''", null, null, null, null);
+        while (cursor.moveToNext()) {
+            int[][] card = GameStateCodec.deserializeCard(cursor.getString(1));
+            if (card == null) continue;
+            try {
+                List<Integer> drawn = GameStateCodec.deserializeList(cursor.getString(2));
+                boolean[][] marked = GameStateCodec.deserializeMarked(cursor.getString(3));
+                ContentValues values = new ContentValues();
+                values.put("game_state", GameStateCodec.encode(card, drawn, marked));
+                db.update("users", values, "id = ?", new String[]{String.valueOf(cursor.getLong(0))});
+            } catch (RuntimeException e) {
+                // Unreadable legacy state: the user starts a new game
+            }
+        }
+        cursor.close();
+        db.execSQL("UPDATE users SET card_state = '', drawn_state = '', marked_state = ''");
     }
 
     public boolean userExists(String username) {
@@ -79,7 +268,22 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put("coins", 20); // Start with 20 coins
         values.put("daily_resets", 0);
         values.put("last_reset_date", "");
-        db.insert("users", null, values);
+        values.put("last_accrual_at", System.currentTimeMillis());
+        // In a transaction so a leaderboard load cannot land between the insert and the board update
+        db.beginTransactionNonExclusive();
+        try {
+            if (db.insert("users", null, values) != -1) {
+                synchronized (leaderboardLock) {
+                    if (leaderboard != null) {
+                        leaderboard.addPlayer(username, 0);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidateProfile(username);
     }
 
     public boolean validateLogin(String username, String password) {
@@ -103,15 +307,87 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.update("users", values, "username = ?", new String[]{username});
     }
 
-    public int getWins(String username) {
+    /**
+     * Returns the user's row id, or -1 if the user does not exist.
+     *
+     * @param username The username to look up.
+     */
+    public int getUserId(String username) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query("users", new String[]{"id"}, "username = ?", new String[]{username}, null, null, null);
+        int userId = -1;
+        if (cursor.moveToFirst()) {
+            userId = cursor.getInt(0);
+        }
+        cursor.close();
+        return userId;
+    }
+
+    /**
+     * Returns the username for a row id, or null if there is no such user.
+     *
+     * @param userId The row id to look up.
+     */
+    public String getUsername(int userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query("users", new String[]{"username"}, "id = ?", new String[]{String.valueOf(userId)}, null, null, null);
+        String username = null;
+        if (cursor.moveToFirst()) {
+            username = cursor.getString(0);
+        }
+        cursor.close();
+        return username;
+    }
+
+    /**
+     * Returns a snapshot of the user's wins, coins and daily reset columns, loaded in one query and then served from cache
+     * until the next write to that user.
+     *
+     * @param username The username to look up.
+     * @return The profile, or null if the user does not exist.
+     */
+    public UserProfile getUserProfile(String username) {
+        long generation;
+        synchronized (profileCache) {
+            UserProfile cached = profileCache.get(username);
+            if (cached != null) {
+                PROFILE_CACHE_HITS.increment();
+                return cached;
+            }
+            generation = profileCacheGeneration;
+        }
+        PROFILE_CACHE_MISSES.increment();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query("users", new String[]{"wins"}, "username = ?", new String[]{username}, null, null, null);
-        int wins = 0;
+        Cursor cursor = db.query("users", new String[]{"wins", "coins", "daily_resets", "last_reset_date", "last_accrual_at"}, "username = ?", new String[]{username}, null, null, null);
+        UserProfile profile = null;
         if (cursor.moveToFirst()) {
-            wins = cursor.getInt(0);
+            profile = new UserProfile(username, cursor.getInt(0), cursor.getInt(1), cursor.getInt(2), cursor.getString(3), cursor.getLong(4));
         }
         cursor.close();
-        return wins;
+        synchronized (profileCache) {
+            // Skip caching if a write landed while we were reading
+            if (profile != null && generation == profileCacheGeneration) {
+                profileCache.put(username, profile);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Drops the user's cached profile, and stops any read already under way from caching what it read. Every write
+     * here calls it, but a write made inside a caller's transaction is not visible until that transaction commits,
+     * and a read in between would cache the old row; the caller must call this again after ending the transaction.
+     */
+    public static void invalidateProfile(String username) {
+        synchronized (profileCache) {
+            profileCache.remove(username);
+            profileCacheGeneration++;
+        }
+    }
+
+    public int getWins(String username) {
+        UserProfile profile = getUserProfile(username);
+        return profile == null ? 0 : profile.wins;
     }
 
     /**
@@ -120,22 +396,54 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @param username The username of the user to increment wins for.
      */
     public void incrementWins(String username) {
-        int currentWins = getWins(username);
+        addWins(username, 1);
+    }
+
+    /**
+     * Adds to the win count in a single UPDATE, so concurrent increments are never lost, and moves the user on the
+     * leaderboard if it is loaded.
+     *
+     * @param username The username of the user to update.
+     * @param delta    The number of wins to add.
+     */
+    public void addWins(String username, int delta) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("wins", currentWins + 1);
-        db.update("users", values, "username = ?", new String[]{username});
+        // Holding the write lock until the board is updated keeps a leaderboard load from counting the win twice
+        db.beginTransactionNonExclusive();
+        try {
+            int updated;
+            SQLiteStatement statement = statement(SQL_ADD_WINS);
+            synchronized (statement) {
+                statement.bindLong(1, delta);
+                statement.bindString(2, username);
+                updated = statement.executeUpdateDelete();
+            }
+            if (updated > 0) {
+                int newWins;
+                statement = statement(SQL_GET_WINS);
+                synchronized (statement) {
+                    statement.bindString(1, username);
+                    newWins = (int) statement.simpleQueryForLong();
+                }
+                synchronized (leaderboardLock) {
+                    if (leaderboard != null) {
+                        leaderboard.changeWins(username, newWins - delta, newWins);
+                        if (!leaderboard.isTopComplete()) {
+                            leaderboard = null;
+                        }
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidateProfile(username);
     }
 
     public int getCoins(String username) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query("users", new String[]{"coins"}, "username = ?", new String[]{username}, null, null, null);
-        int coins = 0;
-        if (cursor.moveToFirst()) {
-            coins = cursor.getInt(0);
-        }
-        cursor.close();
-        return coins;
+        UserProfile profile = getUserProfile(username);
+        return profile == null ? 0 : profile.coins;
     }
 
     /**
@@ -145,32 +453,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @param newCoins The new coin amount to set.
      */
     public void updateCoins(String username, int newCoins) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("coins", newCoins);
-        db.update("users", values, "username = ?", new String[]{username});
+        SQLiteStatement statement = statement(SQL_SET_COINS);
+        synchronized (statement) {
+            statement.bindLong(1, newCoins);
+            statement.bindString(2, username);
+            statement.executeUpdateDelete();
+        }
+        invalidateProfile(username);
     }
 
-    public int getDailyResets(String username) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query("users", new String[]{"daily_resets"}, "username = ?", new String[]{username}, null, null, null);
-        int resets = 0;
-        if (cursor.moveToFirst()) {
-            resets = cursor.getInt(0);
+    /**
+     * Adds to (or, with a negative delta, debits) the user's coins in a single UPDATE.
+     *
+     * @param username The username of the user to update.
+     * @param delta    The change in coins.
+     */
+    public void addCoins(String username, int delta) {
+        SQLiteStatement statement = statement(SQL_ADD_COINS);
+        synchronized (statement) {
+            statement.bindLong(1, delta);
+            statement.bindString(2, username);
+            statement.executeUpdateDelete();
         }
-        cursor.close();
-        return resets;
+        invalidateProfile(username);
+    }
+
+    public int getDailyResets(String username) {
+        UserProfile profile = getUserProfile(username);
+        return profile == null ? 0 : profile.dailyResets;
     }
 
     public String getLastResetDate(String username) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query("users", new String[]{"last_reset_date"}, "username = ?", new String[]{username}, null, null, null);
-        String date = "";
-        if (cursor.moveToFirst()) {
-            date = cursor.getString(0);
-        }
-        cursor.close();
-        return date;
+        UserProfile profile = getUserProfile(username);
+        return profile == null ? "" : profile.lastResetDate;
     }
 
     /**
@@ -186,130 +501,409 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put("daily_resets", newResets);
         values.put("last_reset_date", newDate);
         db.update("users", values, "username = ?", new String[]{username});
+        invalidateProfile(username);
     }
 
     /**
-     * Updates the game state (card, drawn numbers, marked cells) for the specified user in the database.
+     * Starts a new game for the user: the previous active game is closed and a new active game row holds the seed the
+     * engine dealt it from.
      *
-     * @param username     The username of the user to update.
-     * @param card         The current bingo card state.
-     * @param drawnNumbers The list of drawn numbers.
-     * @param marked       The marked cells state.
+     * @param username  The username of the player.
+     * @param geometry  The variant being played.
+     * @param cardCount The number of cards in the game.
+     * @param seed      The game's seed.
+     * @return The new game's id.
      */
-    public void updateGameState(String username, int[][] card, List<Integer> drawnNumbers, boolean[][] marked) {
-        String cardStr = serializeCard(card);
-        String drawnStr = serializeList(drawnNumbers);
-        String markedStr = serializeMarked(marked);
-
+    public long startGame(String username, CardGeometry geometry, int cardCount, long seed) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("card_state", cardStr);
-        values.put("drawn_state", drawnStr);
-        values.put("marked_state", markedStr);
-        db.update("users", values, "username = ?", new String[]{username});
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("active", 0);
+            db.update("games", values, "username = ? AND active = 1", new String[]{username});
+            values = new ContentValues();
+            values.put("username", username);
+            values.put("variant", geometry.getId());
+            values.put("card_count", cardCount);
+            values.put("seed", seed);
+            values.put("draw_index", 0);
+            values.put("active", 1);
+            values.put("created_at", System.currentTimeMillis());
+            long gameId = db.insert("games", null, values);
+            db.setTransactionSuccessful();
+            return gameId;
+        } finally {
+            db.endTransaction();
+        }
     }
 
-    public GameState getGameState(String username) {
+    /**
+     * Records how many numbers a seeded game has called; the calls themselves follow from its seed.
+     *
+     * @param gameId    The game id.
+     * @param drawIndex The number of calls made so far.
+     */
+    public void setDrawIndex(long gameId, int drawIndex) {
+        SQLiteStatement statement = statement(SQL_SET_DRAW_INDEX);
+        synchronized (statement) {
+            statement.bindLong(1, drawIndex);
+            statement.bindLong(2, gameId);
+            statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last journal record whose update this database holds.
+     */
+    public int getJournalCheckpoint() {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query("users", new String[]{"card_state", "drawn_state", "marked_state"}, "username = ?", new String[]{username}, null, null, null);
+        Cursor cursor = db.rawQuery("SELECT last_seq FROM journal_checkpoint WHERE id = 0", null);
+        int lastSeq = 0;
         if (cursor.moveToFirst()) {
-            String cardStr = cursor.getString(0);
-            String drawnStr = cursor.getString(1);
-            String markedStr = cursor.getString(2);
-            cursor.close();
-            if (cardStr.isEmpty()) {
-                return null; // No saved state
-            }
-            int[][] card = deserializeCard(cardStr);
-            List<Integer> drawn = deserializeList(drawnStr);
-            boolean[][] markedArr = deserializeMarked(markedStr);
-            return new GameState(card, drawn, markedArr);
+            lastSeq = cursor.getInt(0);
         }
         cursor.close();
-        return null;
+        return lastSeq;
     }
 
-    private String serializeCard(int[][] card) {
-        StringBuilder sb = new StringBuilder();
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
-                if (sb.length() > 0) sb.append(",");
-                sb.append(card[row][col]);
-            }
+    /**
+     * Records the last journal record applied. Call inside the transaction that applies the records, so the
+     * checkpoint and the updates commit together.
+     *
+     * @param lastSeq The sequence number of the last record applied.
+     */
+    public void setJournalCheckpoint(int lastSeq) {
+        SQLiteStatement statement = statement(SQL_SET_JOURNAL_CHECKPOINT);
+        synchronized (statement) {
+            statement.bindLong(1, lastSeq);
+            statement.executeUpdateDelete();
         }
-        return sb.toString();
     }
 
-    private int[][] deserializeCard(String str) {
-        if (str.isEmpty()) return null;
-        String[] parts = str.split(",");
-        if (parts.length != 25) return null; // Invalid
-        int[][] card = new int[5][5];
-        try {
-            int index = 0;
-            for (int row = 0; row < 5; row++) {
-                for (int col = 0; col < 5; col++) {
-                    card[row][col] = Integer.parseInt(parts[index++]);
+    /**
+     * Returns the id of the user's active game, or -1 if there is none.
+     *
+     * @param username The username of the player.
+     */
+    public long getActiveGameId(String username) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query("games", new String[]{"id"}, "username = ? AND active = 1", new String[]{username}, null, null, null);
+        long gameId = -1;
+        if (cursor.moveToFirst()) {
+            gameId = cursor.getLong(0);
+        }
+        cursor.close();
+        return gameId;
+    }
+
+    /**
+     * Appends one called number to the draw log of a game saved before seeds.
+     *
+     * @param gameId The game id.
+     * @param seq    The position of the number in the call order, starting at 0.
+     * @param number The called number.
+     */
+    public void appendDraw(long gameId, int seq, int number) {
+        SQLiteStatement statement = statement(SQL_APPEND_DRAW);
+        synchronized (statement) {
+            statement.bindLong(1, gameId);
+            statement.bindLong(2, seq);
+            statement.bindLong(3, number);
+            statement.executeInsert();
+        }
+    }
+
+    /**
+     * Adds coins together with the passive income they materialize, moving the accrual timestamp forward.
+     *
+     * @param username      The username of the user to update.
+     * @param delta         The change in coins, including the materialized passive coins.
+     * @param lastAccrualAt The time up to which passive income is now included in the stored coins.
+     */
+    public void addCoins(String username, int delta, long lastAccrualAt) {
+        SQLiteStatement statement = statement(SQL_ACCRUE_COINS);
+        synchronized (statement) {
+            statement.bindLong(1, delta);
+            statement.bindLong(2, lastAccrualAt);
+            statement.bindString(3, username);
+            statement.executeUpdateDelete();
+        }
+        invalidateProfile(username);
+    }
+
+    /**
+     * Returns the user's active game: the seed and draw count of a seeded game, or the cards and draw log of a game
+     * saved before seeds. Cards, marks and called numbers are recomputed by the engine.
+     *
+     * @param username The username of the player.
+     * @return The game state, or null if the user has no active game.
+     */
+    public GameState getGameState(String username) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query("games", new String[]{"id", "variant", "card_count", "seed", "draw_index", "card"}, "username = ? AND active = 1", new String[]{username}, null, null, null);
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            return null; // No saved state
+        }
+        long gameId = cursor.getLong(0);
+        CardGeometry geometry = CardGeometry.byId(cursor.getInt(1));
+        int cardCount = cursor.getInt(2);
+        boolean seeded = !cursor.isNull(3);
+        long seed = cursor.getLong(3);
+        int drawIndex = cursor.getInt(4);
+        byte[] cardBlob = cursor.getBlob(5);
+        cursor.close();
+        if (geometry == null) {
+            return null;
+        }
+        if (seeded) {
+            return cardCount > 0 ? new GameState(geometry, cardCount, seed, drawIndex) : null;
+        }
+        if (cardBlob == null || cardBlob.length == 0 || cardBlob.length % geometry.getCells() != 0) {
+            return null;
+        }
+
+        List<Integer> drawn = new ArrayList<>();
+        cursor = db.query("draws", new String[]{"number"}, "game_id = ?", new String[]{String.valueOf(gameId)}, null, null, "seq");
+        while (cursor.moveToNext()) {
+            drawn.add(cursor.getInt(0));
+        }
+        cursor.close();
+
+        int[] cards = new int[cardBlob.length];
+        for (int i = 0; i < cardBlob.length; i++) {
+            cards[i] = cardBlob[i] & 0xFF;
+        }
+        return new GameState(geometry, cards, cardBlob.length / geometry.getCells(), drawn);
+    }
+
+    /**
+     * Returns the leaderboard, loading it on first use: one pass over the wins index counts the players at each win
+     * count, and one index seek reads the top players.
+     */
+    private Leaderboard leaderboard() {
+        synchronized (leaderboardLock) {
+            if (leaderboard != null) return leaderboard;
+        }
+        synchronized (leaderboardLoadLock) {
+            synchronized (leaderboardLock) {
+                if (leaderboard != null) return leaderboard;
+            }
+            long start = Metrics.start();
+            SQLiteDatabase db = this.getWritableDatabase();
+            // Holding the write lock means every write to wins either lands before the load or updates the loaded board
+            db.beginTransactionNonExclusive();
+            try {
+                Leaderboard board = new Leaderboard(LEADERBOARD_TOP_SIZE);
+                Cursor cursor = db.rawQuery("SELECT wins, COUNT(*) FROM users GROUP BY wins", null);
+                while (cursor.moveToNext()) {
+                    board.addPlayers(cursor.getInt(0), cursor.getInt(1));
+                }
+                cursor.close();
+                List<Leaderboard.Entry> top = new ArrayList<>();
+                cursor = db.rawQuery("SELECT username, wins FROM users ORDER BY wins DESC, username LIMIT " + LEADERBOARD_TOP_SIZE, null);
+                while (cursor.moveToNext()) {
+                    top.add(new Leaderboard.Entry(cursor.getString(0), cursor.getInt(1)));
                 }
+                cursor.close();
+                board.setTop(top);
+                db.setTransactionSuccessful();
+                synchronized (leaderboardLock) {
+                    leaderboard = board;
+                }
+                return board;
+            } finally {
+                db.endTransaction();
+                DB_LOAD_LEADERBOARD.stop(start);
             }
-            return card;
-        } catch (NumberFormatException e) {
-            return null;
         }
     }
 
-    private String serializeList(List<Integer> list) {
-        StringBuilder sb = new StringBuilder();
-        for (int num : list) {
-            if (sb.length() > 0) sb.append(",");
-            sb.append(num);
+    /**
+     * Drops the loaded leaderboard so the next read reloads it. Call when a transaction that wrote wins rolls back,
+     * since the board already counted them.
+     */
+    public static void invalidateLeaderboard() {
+        synchronized (leaderboardLock) {
+            leaderboard = null;
         }
-        return sb.toString();
     }
 
-    private List<Integer> deserializeList(String str) {
-        List<Integer> list = new ArrayList<>();
-        if (str.isEmpty()) return list;
-        String[] parts = str.split(",");
-        for (String part : parts) {
-            list.add(Integer.parseInt(part));
+    /**
+     * Returns the user's rank by wins, shared with everyone on the same wins, in O(log n) from the loaded leaderboard.
+     * Only committed wins count, so flush {@link WriteBehindStore} first. Reads the database; call off the UI thread.
+     *
+     * @param username The username to look up.
+     * @return The 1-based rank, or -1 if the user does not exist.
+     */
+    public int getRank(String username) {
+        UserProfile profile = getUserProfile(username);
+        if (profile == null) return -1;
+        Leaderboard board = leaderboard();
+        synchronized (leaderboardLock) {
+            return board.rankOf(profile.wins);
         }
-        return list;
     }
 
-    private String serializeMarked(boolean[][] marked) {
-        StringBuilder sb = new StringBuilder();
-        for (int row = 0; row < 5; row++) {
-            for (int col = 0; col < 5; col++) {
-                if (sb.length() > 0) sb.append(",");
-                sb.append(marked[row][col] ? "1" : "0");
+    /**
+     * Returns the page of the leaderboard after the given row. Pages are read by seeking the leaderboard index to the
+     * last row shown rather than by OFFSET, so every page costs the same however far down it is; the top of the wins
+     * board is served from memory.
+     *
+     * @param byCoins True to rank by coins, false to rank by wins.
+     * @param after   The last row of the previous page, or null for the first page.
+     * @param limit   The maximum number of rows to return.
+     * @return The rows, fewer than limit at the end of the board.
+     */
+    public List<LeaderboardRow> getLeaderboardPage(boolean byCoins, @Nullable LeaderboardRow after, int limit) {
+        int position = after == null ? 0 : after.position;
+        List<LeaderboardRow> rows = new ArrayList<>(limit);
+        if (!byCoins) {
+            Leaderboard board = leaderboard();
+            synchronized (leaderboardLock) {
+                List<Leaderboard.Entry> top = board.getTop();
+                if (position + limit <= top.size() || top.size() < board.getTopSize()) {
+                    for (int i = position; i < Math.min(position + limit, top.size()); i++) {
+                        Leaderboard.Entry entry = top.get(i);
+                        rows.add(new LeaderboardRow(entry.name, entry.wins, board.rankOf(entry.wins), i + 1));
+                    }
+                    return rows;
+                }
+            }
+        }
+
+        String column = byCoins ? "coins" : "wins";
+        SQLiteDatabase db = this.getReadableDatabase();
+        if (after == null) {
+            readLeaderboardRows(db.rawQuery("SELECT username, " + column + " FROM users ORDER BY " + column + " DESC, username LIMIT ?",
+                    new String[]{String.valueOf(limit)}), byCoins, null, rows);
+        } else {
+            // Two seeks, the rest of the tie and then the lower scores; a single OR condition would scan the index
+            String score = String.valueOf(after.score);
+            readLeaderboardRows(db.rawQuery("SELECT username, " + column + " FROM users WHERE " + column + " = ? AND username > ? ORDER BY username LIMIT ?",
+                    new String[]{score, after.username, String.valueOf(limit)}), byCoins, after, rows);
+            if (rows.size() < limit) {
+                readLeaderboardRows(db.rawQuery("SELECT username, " + column + " FROM users WHERE " + column + " < ? ORDER BY " + column + " DESC, username LIMIT ?",
+                        new String[]{score, String.valueOf(limit - rows.size())}), byCoins, rows.isEmpty() ? after : rows.get(rows.size() - 1), rows);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Appends the cursor's username and score rows after the previous row, ranking them: by wins from the leaderboard,
+     * by coins from their position, with ties sharing the rank of the first of them.
+     */
+    private void readLeaderboardRows(Cursor cursor, boolean byCoins, @Nullable LeaderboardRow previous, List<LeaderboardRow> rows) {
+        Leaderboard board = byCoins ? null : leaderboard();
+        while (cursor.moveToNext()) {
+            int score = cursor.getInt(1);
+            int position = previous == null ? 1 : previous.position + 1;
+            int rank;
+            if (board != null) {
+                synchronized (leaderboardLock) {
+                    rank = board.rankOf(score);
+                }
+            } else {
+                rank = previous != null && previous.score == score ? previous.rank : position;
             }
+            previous = new LeaderboardRow(cursor.getString(0), score, rank, position);
+            rows.add(previous);
         }
-        return sb.toString();
+        cursor.close();
+    }
+
+    private static long insertGame(SQLiteDatabase db, String username, int variant, byte[] cardBlob) {
+        ContentValues values = new ContentValues();
+        values.put("username", username);
+        values.put("variant", variant);
+        values.put("card", cardBlob);
+        values.put("active", 1);
+        values.put("created_at", System.currentTimeMillis());
+        return db.insert("games", null, values);
+    }
+
+    private static void insertDraw(SQLiteDatabase db, long gameId, int seq, int number) {
+        ContentValues values = new ContentValues();
+        values.put("game_id", gameId);
+        values.put("seq", seq);
+        values.put("number", number);
+        db.insertWithOnConflict("draws", null, values, SQLiteDatabase.CONFLICT_REPLACE);
     }
 
-    private boolean[][] deserializeMarked(String str) {
-        if (str.isEmpty()) return new boolean[5][5];
-        String[] parts = str.split(",");
-        boolean[][] marked = new boolean[5][5];
-        int index = 0;
+    private static byte[] toCardBlob(int[][] card) {
+        byte[] blob = new byte[25];
         for (int row = 0; row < 5; row++) {
             for (int col = 0; col < 5; col++) {
-                marked[row][col] = "1".equals(parts[index++]);
+                blob[row * 5 + col] = (byte) card[row][col];
             }
         }
-        return marked;
+        return blob;
     }
 
+    /**
+     * Immutable snapshot of a user's profile columns.
+     */
+    public static class UserProfile {
+        public final String username;
+        public final int wins;
+        public final int coins;
+        public final int dailyResets;
+        public final String lastResetDate;
+        public final long lastAccrualAt;
+
+        public UserProfile(String username, int wins, int coins, int dailyResets, String lastResetDate, long lastAccrualAt) {
+            this.username = username;
+            this.wins = wins;
+            this.coins = coins;
+            this.dailyResets = dailyResets;
+            this.lastResetDate = lastResetDate;
+            this.lastAccrualAt = lastAccrualAt;
+        }
+    }
+
+    /**
+     * One row of the leaderboard: a player, their wins or coins, their rank and their place in the list.
+     */
+    public static class LeaderboardRow {
+        public final String username;
+        public final int score;
+        public final int rank;
+        public final int position;
+
+        public LeaderboardRow(String username, int score, int rank, int position) {
+            this.username = username;
+            this.score = score;
+            this.rank = rank;
+            this.position = position;
+        }
+    }
+
+    /**
+     * A saved game: seeded, with its seed and draw count, or from before seeds, with its cards and called numbers.
+     */
     public static class GameState {
-        public int[][] card;
+        public CardGeometry geometry;
+        public int cardCount;
+        public boolean seeded;
+        public long seed;
+        public int drawIndex;
+        public int[] cards;
         public List<Integer> drawnNumbers;
-        public boolean[][] marked;
 
-        public GameState(int[][] card, List<Integer> drawnNumbers, boolean[][] marked) {
-            this.card = card;
+        public GameState(CardGeometry geometry, int cardCount, long seed, int drawIndex) {
+            this.geometry = geometry;
+            this.cardCount = cardCount;
+            this.seeded = true;
+            this.seed = seed;
+            this.drawIndex = drawIndex;
+        }
+
+        public GameState(CardGeometry geometry, int[] cards, int cardCount, List<Integer> drawnNumbers) {
+            this.geometry = geometry;
+            this.cards = cards;
+            this.cardCount = cardCount;
             this.drawnNumbers = drawnNumbers;
-            this.marked = marked;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package ict.mgame.bingogame;
+
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows every player ranked by wins or by coins, and the current user's rank by wins. The database is read on a
+ * loader thread, after the wins still queued in {@link WriteBehindStore} are written, and the results are shown on the
+ * UI thread.
+ */
+public class LeaderboardActivity extends AppCompatActivity {
+    private TextView myRankText;
+    private Button sortButton;
+    private RecyclerView leaderboardList;
+    private LeaderboardAdapter adapter;
+    private DatabaseHelper dbHelper;
+    private String username;
+    private boolean byCoins;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "bingo-leaderboard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.leaderboard);
+
+        myRankText = findViewById(R.id.my_rank);
+        sortButton = findViewById(R.id.sort_button);
+        leaderboardList = findViewById(R.id.leaderboard_list);
+
+        dbHelper = new TimedDatabaseHelper(this);
+        SharedPreferences prefs = getSharedPreferences("login", MODE_PRIVATE);
+        username = prefs.getString("username", "Guest");
+
+        // Queued first, so every page is read after the pending wins are committed
+        loader.execute(() -> WriteBehindStore.getInstance(this).flush());
+        adapter = new LeaderboardAdapter(dbHelper, username, loader);
+        leaderboardList.setLayoutManager(new LinearLayoutManager(this));
+        leaderboardList.setHasFixedSize(true);
+        leaderboardList.setAdapter(adapter);
+
+        sortButton.setOnClickListener(v -> {
+            byCoins = !byCoins;
+            sortButton.setText(byCoins ? "Rank by wins" : "Rank by coins");
+            adapter.setByCoins(byCoins);
+            leaderboardList.scrollToPosition(0);
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (username.equals("Guest")) {
+            myRankText.setText("Log in to be ranked");
+            return;
+        }
+        loader.execute(() -> {
+            WriteBehindStore.getInstance(this).flush();
+            int rank = dbHelper.getRank(username);
+            runOnUiThread(() -> myRankText.setText(rank > 0 ? "Your rank: #" + rank : "Log in to be ranked"));
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        adapter.close();
+        loader.shutdownNow();
+    }
+}
@@ -0,0 +1,130 @@
+package ict.mgame.bingogame;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.TypedValue;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The leaderboard as an endless list. Rows are read a page at a time with
+ * {@link DatabaseHelper#getLeaderboardPage} on the loader, the next page once the list is bound near the last row
+ * read, so only the rows scrolled to are ever loaded and the UI thread never waits on the database.
+ */
+public class LeaderboardAdapter extends RecyclerView.Adapter<LeaderboardAdapter.RowViewHolder> {
+    private static final int PAGE_SIZE = 50;
+    // How close to the last row read the list is bound before the next page is read
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final int HIGHLIGHT_COLOR = 0xFFFFF59D;
+
+    private final DatabaseHelper dbHelper;
+    private final String username;
+    private final Executor loader;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<DatabaseHelper.LeaderboardRow> rows = new ArrayList<>();
+    private boolean byCoins;
+    private boolean exhausted;
+    private boolean pagePending;
+    private boolean closed;
+    // Bumped when the order changes, so a page read for the old order is dropped
+    private int generation;
+
+    /**
+     * @param loader Reads the pages off the UI thread, one at a time.
+     */
+    public LeaderboardAdapter(DatabaseHelper dbHelper, String username, Executor loader) {
+        this.dbHelper = dbHelper;
+        this.username = username;
+        this.loader = loader;
+        readPage();
+    }
+
+    static class RowViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        RowViewHolder(TextView text) {
+            super(text);
+            this.text = text;
+        }
+    }
+
+    /**
+     * Switches between ranking by coins and by wins, starting again from the top.
+     */
+    public void setByCoins(boolean byCoins) {
+        this.byCoins = byCoins;
+        generation++;
+        rows.clear();
+        exhausted = false;
+        notifyDataSetChanged();
+        readPage();
+    }
+
+    /**
+     * Stops reading pages and drops the ones still being read. Call before the loader is shut down.
+     */
+    public void close() {
+        closed = true;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    @NonNull
+    @Override
+    public RowViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        TextView text = new TextView(parent.getContext());
+        int paddingPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 8,
+                parent.getResources().getDisplayMetrics());
+        text.setPadding(paddingPx, paddingPx, paddingPx, paddingPx);
+        text.setTextSize(18);
+        text.setLayoutParams(new RecyclerView.LayoutParams(
+                RecyclerView.LayoutParams.MATCH_PARENT, RecyclerView.LayoutParams.WRAP_CONTENT));
+        return new RowViewHolder(text);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RowViewHolder holder, int position) {
+        DatabaseHelper.LeaderboardRow row = rows.get(position);
+        holder.text.setText("#" + row.rank + "  " + row.username + "  " + row.score + (byCoins ? " coins" : " wins"));
+        holder.text.setBackgroundColor(row.username.equals(username) ? HIGHLIGHT_COLOR : 0);
+
+        // The page is added from a later message on the UI thread, never while the list is being bound
+        if (!exhausted && !pagePending && position >= rows.size() - PREFETCH_DISTANCE) {
+            readPage();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+
+    /**
+     * Reads the page after the last row on the loader and appends it on the UI thread, unless the order has changed
+     * in the meantime.
+     */
+    private void readPage() {
+        if (closed) return;
+        pagePending = true;
+        int requested = generation;
+        boolean requestedByCoins = byCoins;
+        DatabaseHelper.LeaderboardRow last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        loader.execute(() -> {
+            List<DatabaseHelper.LeaderboardRow> page = dbHelper.getLeaderboardPage(requestedByCoins, last, PAGE_SIZE);
+            mainHandler.post(() -> {
+                if (closed || requested != generation) return;
+                pagePending = false;
+                exhausted = page.size() < PAGE_SIZE;
+                int from = rows.size();
+                rows.addAll(page);
+                notifyItemRangeInserted(from, page.size());
+            });
+        });
+    }
+}
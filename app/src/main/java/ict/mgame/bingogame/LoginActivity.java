@@ -29,7 +29,7 @@ public class LoginActivity extends AppCompatActivity {
         enterButton = findViewById(R.id.enter_button);
         registerButton = findViewById(R.id.register_button);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = new TimedDatabaseHelper(this);
 
         // Insert default user if not exists (for testing)
         if (!dbHelper.userExists("admin")) {
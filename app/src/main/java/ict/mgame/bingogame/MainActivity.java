@@ -3,38 +3,60 @@ package ict.mgame.bingogame;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.os.Handler;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
-import android.widget.GridLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.CoinAccrual;
+import ict.mgame.bingogame.engine.Metrics;
+import ict.mgame.bingogame.engine.PatternRegistry;
+
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
+
+    private static final Metrics.Timer DRAW_NUMBER = Metrics.timer("ui.drawNumber");
+    private static final long METRICS_REFRESH_MS = 1000;
+    private static final String METRICS_FILE = "metrics.txt";
 
     // UI elements
     private TextView drawnNumberText, usernameDisplay, scoreDisplay, coinsDisplay, resetsRemainingDisplay, coinTimerDisplay;
+    private TextView metricsOverlay;
+    private Runnable metricsTicker;
 
     // Buttons
     private Button drawButton, settingsButton, restartButton;
 
     // Database and user data
     private DatabaseHelper dbHelper;
+    private WriteBehindStore store;
     private String username;
-    private int coins, dailyResets;
+    private int wins, coins, dailyResets;
     private String lastResetDate;
 
-    // Timer for coins
-    private Handler timerHandler = new Handler();
-    private Runnable timerRunnable;
-    private long lastAddTime;
+    // Passive coin income, computed from the last accrual timestamp; coins holds the last displayed balance
+    private CoinAccrual wallet;
+    private Runnable coinTicker;
     private static final long COIN_INTERVAL_MS = 30000; // 30 seconds
+    private static final long MAX_ACCRUAL_MS = 8 * 60 * 60 * 1000; // Time away pays at most 8 hours of income
+
+    // The game as last queued for saving: its deal and how many calls
+    private int savedDealVersion = -1;
+    private int savedDrawCount;
 
     // Game handler
     private BingoGame bingoGame;
@@ -53,13 +75,14 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         initializeViews();
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = new TimedDatabaseHelper(this);
+        store = WriteBehindStore.getInstance(this);
 
         SharedPreferences prefs = getSharedPreferences("login", MODE_PRIVATE);
         username = prefs.getString("username", "Guest");
         usernameDisplay.setText("Welcome, " + username + "!");
 
-        bingoGame = new BingoGame(this, findViewById(R.id.bingo_grid), drawnNumberText);
+        bingoGame = new BingoGame(findViewById(R.id.card_list), drawnNumberText);
 
         if (!username.equals("Guest")) {
             loadUserData();
@@ -84,17 +107,22 @@ public class MainActivity extends AppCompatActivity {
         drawButton = findViewById(R.id.draw_button);
         settingsButton = findViewById(R.id.settings_button);
         restartButton = findViewById(R.id.restart_button);
+        metricsOverlay = findViewById(R.id.metrics_overlay);
     }
 
     /**
      * Loads user-specific data from the database, such as wins and coins, and updates the UI displays.
      */
     private void loadUserData() {
-        int wins = dbHelper.getWins(username);
+        DatabaseHelper.UserProfile profile = dbHelper.getUserProfile(username);
+        wins = profile == null ? 0 : profile.wins;
         scoreDisplay.setText("Wins: " + wins);
-        coins = dbHelper.getCoins(username);
+        wallet = profile == null
+                ? new CoinAccrual(0, System.currentTimeMillis(), COIN_INTERVAL_MS, MAX_ACCRUAL_MS)
+                : new CoinAccrual(profile.coins, profile.lastAccrualAt, COIN_INTERVAL_MS, MAX_ACCRUAL_MS);
+        coins = wallet.balance(System.currentTimeMillis());
         coinsDisplay.setText("Coins: " + coins);
-        updateResetInfo();
+        updateResetInfo(profile);
     }
 
     /**
@@ -103,15 +131,23 @@ public class MainActivity extends AppCompatActivity {
     private void loadOrInitializeGameState() {
         DatabaseHelper.GameState state = dbHelper.getGameState(username);
         if (state != null) {
-            bingoGame.loadBingoCard(state.card, state.marked);
-            if (!state.drawnNumbers.isEmpty()) {
-                drawnNumberText.setText("Drawn: " + state.drawnNumbers.get(state.drawnNumbers.size() - 1));
+            if (state.seeded) {
+                bingoGame.resumeGame(state.geometry, state.cardCount, state.seed, state.drawIndex);
+            } else {
+                bingoGame.loadGame(state.geometry, state.cards, state.cardCount, state.drawnNumbers);
+            }
+            markGameSaved();
+            applyWinPatterns();
+            List<Integer> drawn = bingoGame.getDrawnNumbers();
+            if (!drawn.isEmpty()) {
+                drawnNumberText.setText("Drawn: " + drawn.get(drawn.size() - 1));
             }
             if (bingoGame.checkForBingo()) {
                 drawButton.setEnabled(false);
             }
         } else {
-            bingoGame.initializeBingoCard();
+            bingoGame.initializeBingoCards(getGeometry(), getCardCount());
+            applyWinPatterns();
             saveGameState();
         }
     }
@@ -125,7 +161,8 @@ public class MainActivity extends AppCompatActivity {
         coinsDisplay.setText("Coins: 0");
         resetsRemainingDisplay.setText("Resets left: Unlimited (Guest)");
         coinTimerDisplay.setText("");
-        bingoGame.initializeBingoCard();
+        bingoGame.initializeBingoCards(getGeometry(), getCardCount());
+        applyWinPatterns();
     }
 
     /**
@@ -137,6 +174,11 @@ public class MainActivity extends AppCompatActivity {
         settingsButton.setOnClickListener(v -> startActivity(new Intent(MainActivity.this, SettingsActivity.class)));
 
         restartButton.setOnClickListener(v -> restartGame());
+
+        metricsOverlay.setOnLongClickListener(v -> {
+            dumpMetrics();
+            return true;
+        });
     }
 
     /**
@@ -148,17 +190,29 @@ public class MainActivity extends AppCompatActivity {
         if (!username.equals("Guest")) {
             startCoinTimer();
         }
+        boolean showMetrics = getSharedPreferences(SettingsActivity.GAME_PREFS, MODE_PRIVATE)
+                .getBoolean(SettingsActivity.KEY_METRICS, false);
+        Metrics.setEnabled(showMetrics);
+        if (showMetrics) {
+            startMetricsOverlay();
+        } else {
+            metricsOverlay.setVisibility(View.GONE);
+        }
     }
 
     /**
-     * Called when the activity is no longer visible to the user. Stops the coin timer and saves game state if not in guest mode.
+     * Called when the activity is no longer visible to the user. Stops the coin timer and, if not in guest mode,
+     * materializes earned coins and waits for all queued writes to be committed.
      */
     @Override
     protected void onPause() {
         super.onPause();
         stopCoinTimer();
+        stopMetricsOverlay();
         if (!username.equals("Guest")) {
+            materializeCoins(System.currentTimeMillis(), 0);
             saveGameState();
+            store.flush();
         }
     }
 
@@ -166,77 +220,152 @@ public class MainActivity extends AppCompatActivity {
      * Handles the draw number action, including coin deduction, number generation, marking the card, and checking for bingo.
      */
     private void drawNumber() {
-        if (username.equals("Guest") || coins < 1) {
+        long start = Metrics.start();
+        try {
+            drawNumberTimed();
+        } finally {
+            DRAW_NUMBER.stop(start);
+        }
+    }
+
+    private void drawNumberTimed() {
+        long now = System.currentTimeMillis();
+        if (username.equals("Guest") || wallet.balance(now) < 1) {
             Toast.makeText(this, "Not enough coins!", Toast.LENGTH_SHORT).show();
             return;
         }
-        if (bingoGame.getDrawnNumbers().size() >= 75) {
+        if (bingoGame.getDrawCount() >= bingoGame.getEngine().getGeometry().getMaxNumber()) {
             Toast.makeText(this, "All numbers drawn!", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Deduct coin
-        coins--;
-        dbHelper.updateCoins(username, coins);
+        // Deduct coin, folding in any passive income earned so far
+        int balanceBeforeDraw = wallet.balance(now);
+        materializeCoins(now, -1);
+        coins = wallet.balance(now);
         coinsDisplay.setText("Coins: " + coins);
 
-        bingoGame.performDraw(coins, dbHelper, username, coinsDisplay);
+        bingoGame.performDraw(balanceBeforeDraw, dbHelper, username, coinsDisplay);
 
         saveGameState();
 
         if (bingoGame.checkForBingo()) {
-            Toast.makeText(this, "BINGO! You win!", Toast.LENGTH_LONG).show();
+            String message = "BINGO";
+            if (!bingoGame.getEngine().getPatterns().isStandard()) {
+                message += " (" + bingoGame.getNewWinningPatternName() + ")";
+            }
+            if (bingoGame.getCardCount() > 1) {
+                message += " on card " + (bingoGame.getNewWinningCard() + 1);
+            }
+            message += "! You win!";
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
             drawButton.setEnabled(false);
 
             if (!username.equals("Guest")) {
-                dbHelper.incrementWins(username);
-                int newWins = dbHelper.getWins(username);
-                scoreDisplay.setText("Wins: " + newWins);
+                store.incrementWins(username);
+                wins++;
+                scoreDisplay.setText("Wins: " + wins);
                 addCoin(50);
             }
-            saveGameState();
         }
     }
 
     /**
-     * Starts the timer for passively adding coins every interval.
+     * Starts the per-second countdown label. Passive coins are derived from the accrual timestamp, so the ticker
+     * only refreshes views and never touches the database.
      */
     private void startCoinTimer() {
-        lastAddTime = System.currentTimeMillis();
-        timerRunnable = new Runnable() {
+        coinTicker = new Runnable() {
             @Override
             public void run() {
                 long now = System.currentTimeMillis();
-                long elapsedSinceLastAdd = now - lastAddTime;
-                if (elapsedSinceLastAdd >= COIN_INTERVAL_MS) {
-                    addCoin(1);
-                    lastAddTime = now;
+                int balance = wallet.balance(now);
+                if (balance != coins) {
+                    coins = balance;
+                    coinsDisplay.setText("Coins: " + coins);
                 }
-                long remaining = COIN_INTERVAL_MS - (elapsedSinceLastAdd % COIN_INTERVAL_MS);
+                long remaining = wallet.msUntilNext(now);
                 coinTimerDisplay.setText("Next coin in: " + (remaining / 1000) + "s");
-                timerHandler.postDelayed(this, 1000);
+                // Wake up when the displayed second changes
+                coinTimerDisplay.postDelayed(this, (remaining - 1) % 1000 + 1);
             }
         };
-        timerHandler.post(timerRunnable);
+        coinTimerDisplay.post(coinTicker);
     }
 
     /**
-     * Stops the coin addition timer.
+     * Stops the countdown label.
      */
     private void stopCoinTimer() {
-        if (timerRunnable != null) {
-            timerHandler.removeCallbacks(timerRunnable);
+        if (coinTicker != null) {
+            coinTimerDisplay.removeCallbacks(coinTicker);
+        }
+    }
+
+    /**
+     * Shows the metrics overlay and refreshes it every second while the activity is visible.
+     */
+    private void startMetricsOverlay() {
+        metricsOverlay.setVisibility(View.VISIBLE);
+        metricsTicker = new Runnable() {
+            @Override
+            public void run() {
+                metricsOverlay.setText(Metrics.dump());
+                metricsOverlay.postDelayed(this, METRICS_REFRESH_MS);
+            }
+        };
+        metricsOverlay.post(metricsTicker);
+    }
+
+    private void stopMetricsOverlay() {
+        if (metricsTicker != null) {
+            metricsOverlay.removeCallbacks(metricsTicker);
+            metricsTicker = null;
         }
     }
 
     /**
-     * Adds a specified amount of coins to the user's total, updates the database, and refreshes the UI.
+     * Writes the current metrics table to logcat and to a file in the app's files directory.
+     */
+    private void dumpMetrics() {
+        String table = Metrics.dump();
+        for (String line : table.split("\n")) {
+            Log.i(TAG, line);
+        }
+        File file = new File(getFilesDir(), METRICS_FILE);
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(table);
+            Toast.makeText(this, "Metrics written to " + file.getPath(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file, e);
+            Toast.makeText(this, "Metrics written to logcat", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Folds earned passive coins into the stored balance, applies a change, and queues both as one write together
+     * with the new accrual timestamp.
+     *
+     * @param now    The current time.
+     * @param change The coins to add (negative to spend) on top of the earned coins.
+     */
+    private void materializeCoins(long now, int change) {
+        int earned = wallet.materialize(now);
+        wallet.add(change);
+        if (earned != 0 || change != 0) {
+            store.addCoins(username, earned + change, wallet.getLastAccrualAt());
+        }
+    }
+
+    /**
+     * Adds a specified amount of coins to the user's total, queues the database write, and refreshes the UI.
      *
      * @param amount The number of coins to add.
      */
     private void addCoin(int amount) {
-        coins += amount;
-        dbHelper.updateCoins(username, coins);
+        wallet.add(amount);
+        store.addCoins(username, amount);
+        coins = wallet.balance(System.currentTimeMillis());
         coinsDisplay.setText("Coins: " + coins);
         Toast.makeText(this, "+" + amount + " coin!", Toast.LENGTH_SHORT).show();
     }
@@ -245,13 +374,23 @@ public class MainActivity extends AppCompatActivity {
      * Updates the daily reset information based on the current date and database values.
      */
     private void updateResetInfo() {
+        updateResetInfo(dbHelper.getUserProfile(username));
+    }
+
+    /**
+     * Updates the daily reset information based on the current date and an already loaded profile.
+     *
+     * @param profile The user's profile snapshot, or null if the user row is missing.
+     */
+    private void updateResetInfo(DatabaseHelper.UserProfile profile) {
         String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        lastResetDate = dbHelper.getLastResetDate(username);
+        lastResetDate = profile == null ? "" : profile.lastResetDate;
         if (!currentDate.equals(lastResetDate)) {
             dailyResets = 0;
+            lastResetDate = currentDate;
             dbHelper.updateDailyResets(username, 0, currentDate);
         } else {
-            dailyResets = dbHelper.getDailyResets(username);
+            dailyResets = profile.dailyResets;
         }
         resetsRemainingDisplay.setText("Resets left: " + (5 - dailyResets));
     }
@@ -261,7 +400,9 @@ public class MainActivity extends AppCompatActivity {
      */
     private void restartGame() {
         if (username.equals("Guest")) {
-            bingoGame.performRestart();
+            bingoGame.performRestart(getGeometry(), getCardCount());
+            applyWinPatterns();
+            drawButton.setEnabled(true);
             return;
         }
         updateResetInfo();
@@ -272,16 +413,83 @@ public class MainActivity extends AppCompatActivity {
         dailyResets++;
         dbHelper.updateDailyResets(username, dailyResets, lastResetDate);
         resetsRemainingDisplay.setText("Resets left: " + (5 - dailyResets));
-        bingoGame.performRestart();
+        bingoGame.performRestart(getGeometry(), getCardCount());
+        applyWinPatterns();
+        drawButton.setEnabled(true);
         saveGameState();
         Toast.makeText(this, "Game restarted!", Toast.LENGTH_SHORT).show();
     }
 
     /**
-     * Saves the current game state to the database if not in guest mode.
+     * Returns the number of cards per game chosen in settings.
+     */
+    private int getCardCount() {
+        return getSharedPreferences(SettingsActivity.GAME_PREFS, MODE_PRIVATE)
+                .getInt(SettingsActivity.KEY_CARD_COUNT, 1);
+    }
+
+    /**
+     * Returns the card geometry chosen in settings for new games.
+     */
+    private CardGeometry getGeometry() {
+        CardGeometry geometry = CardGeometry.byId(getSharedPreferences(SettingsActivity.GAME_PREFS, MODE_PRIVATE)
+                .getInt(SettingsActivity.KEY_VARIANT, CardGeometry.BINGO_75.getId()));
+        return geometry == null ? CardGeometry.BINGO_75 : geometry;
+    }
+
+    /**
+     * Activates the configured win patterns on the current cards.
+     */
+    private void applyWinPatterns() {
+        bingoGame.setPatterns(loadWinPatterns(bingoGame.getEngine().getGeometry()));
+    }
+
+    /**
+     * Returns the win patterns configured for the current event, falling back to the geometry's lines when none are
+     * set or the configuration does not parse for that geometry.
+     */
+    private PatternRegistry loadWinPatterns(CardGeometry geometry) {
+        String spec = getSharedPreferences(SettingsActivity.GAME_PREFS, MODE_PRIVATE)
+                .getString(SettingsActivity.KEY_WIN_PATTERNS, null);
+        if (spec == null) return PatternRegistry.standard(geometry);
+        try {
+            return PatternRegistry.parse(geometry, spec);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid win patterns for " + geometry + ", using lines", e);
+            return PatternRegistry.standard(geometry);
+        }
+    }
+
+    /**
+     * Queues only what changed in the game since it was last saved, if not in guest mode: a new deal as a new game
+     * (saved as its seed), and new calls as the draw count of a seeded game or as draw log entries of a game saved
+     * before seeds. Queues nothing when the game is unchanged, so it is cheap to call after every action.
      */
     private void saveGameState() {
         if (username.equals("Guest")) return;
-        dbHelper.updateGameState(username, bingoGame.getCard(), bingoGame.getDrawnNumbers(), bingoGame.getMarked());
+        BingoEngine engine = bingoGame.getEngine();
+        if (engine.getDealVersion() != savedDealVersion) {
+            store.startGame(username, engine.getGeometry(), engine.getCardCount(), engine.getSeed());
+            savedDealVersion = engine.getDealVersion();
+            savedDrawCount = 0;
+        }
+        int drawCount = engine.getDrawCount();
+        if (drawCount == savedDrawCount) return;
+        if (engine.isSeeded()) {
+            store.setDrawIndex(username, drawCount);
+        } else {
+            for (int seq = savedDrawCount; seq < drawCount; seq++) {
+                store.appendDraw(username, seq, engine.getDrawnNumber(seq));
+            }
+        }
+        savedDrawCount = drawCount;
+    }
+
+    /**
+     * Records the current game as saved, e.g. right after loading it.
+     */
+    private void markGameSaved() {
+        savedDealVersion = bingoGame.getEngine().getDealVersion();
+        savedDrawCount = bingoGame.getDrawCount();
     }
 }
\ No newline at end of file
@@ -28,7 +28,7 @@ public class RegisterActivity extends AppCompatActivity {
         confirmPasswordEditText = findViewById(R.id.confirm_password);
         registerButton = findViewById(R.id.register_button);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = new TimedDatabaseHelper(this);
 
         registerButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -5,18 +5,47 @@ import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.EditText;
+import android.widget.RadioGroup;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.Metrics;
+import ict.mgame.bingogame.engine.PatternRegistry;
+
 public class SettingsActivity extends AppCompatActivity {
 
+    // Game preferences, read by MainActivity when a new game starts
+    public static final String GAME_PREFS = "game";
+    public static final String KEY_CARD_COUNT = "card_count";
+    public static final int MAX_CARD_COUNT = 500;
+    // Active win patterns for themed events, in the text form read by PatternRegistry.parse and set from the win
+    // patterns field; unset means standard lines
+    public static final String KEY_WIN_PATTERNS = "win_patterns";
+    // The CardGeometry id of new games; unset means 75-ball
+    public static final String KEY_VARIANT = "variant";
+    // Whether WriteBehindStore journals updates to a memory-mapped file; read once when the store is created
+    public static final String KEY_JOURNAL = "journal";
+    // Whether hot-path metrics are recorded and shown over the game screen
+    public static final String KEY_METRICS = "metrics";
+
     private EditText currentPasswordEditText;
     private EditText newPasswordEditText;
     private EditText confirmNewPasswordEditText;
     private Button changePasswordButton;
+    private EditText cardCountEditText;
+    private Button saveCardCountButton;
+    private RadioGroup variantGroup;
+    private EditText winPatternsEditText;
+    private Button saveWinPatternsButton;
+    private CheckBox journalCheckBox;
+    private CheckBox metricsCheckBox;
+    private Button leaderboardButton;
     private Button logoutButton;
     private DatabaseHelper dbHelper;
     private String username;
@@ -30,9 +59,17 @@ public class SettingsActivity extends AppCompatActivity {
         newPasswordEditText = findViewById(R.id.new_password);
         confirmNewPasswordEditText = findViewById(R.id.confirm_new_password);
         changePasswordButton = findViewById(R.id.change_password_button);
+        cardCountEditText = findViewById(R.id.card_count);
+        saveCardCountButton = findViewById(R.id.save_card_count_button);
+        variantGroup = findViewById(R.id.variant_group);
+        winPatternsEditText = findViewById(R.id.win_patterns);
+        saveWinPatternsButton = findViewById(R.id.save_win_patterns_button);
+        journalCheckBox = findViewById(R.id.journal_checkbox);
+        metricsCheckBox = findViewById(R.id.metrics_checkbox);
+        leaderboardButton = findViewById(R.id.leaderboard_button);
         logoutButton = findViewById(R.id.logout_button);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = new TimedDatabaseHelper(this);
 
         // Get current username from SharedPreferences
         SharedPreferences prefs = getSharedPreferences("login", MODE_PRIVATE);
@@ -85,6 +122,117 @@ public class SettingsActivity extends AppCompatActivity {
             }
         });
 
+        SharedPreferences gamePrefs = getSharedPreferences(GAME_PREFS, MODE_PRIVATE);
+        cardCountEditText.setText(String.valueOf(gamePrefs.getInt(KEY_CARD_COUNT, 1)));
+
+        saveCardCountButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int count;
+                try {
+                    count = Integer.parseInt(cardCountEditText.getText().toString().trim());
+                } catch (NumberFormatException e) {
+                    count = 0;
+                }
+                if (count < 1 || count > MAX_CARD_COUNT) {
+                    Toast.makeText(SettingsActivity.this, "Enter 1 to " + MAX_CARD_COUNT + " cards", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                SharedPreferences.Editor editor = gamePrefs.edit();
+                editor.putInt(KEY_CARD_COUNT, count);
+                editor.apply();
+
+                Toast.makeText(SettingsActivity.this, "Cards per game saved! Applies to your next game.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        variantGroup.check(variantButtonId(gamePrefs.getInt(KEY_VARIANT, CardGeometry.BINGO_75.getId())));
+        variantGroup.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                CardGeometry geometry;
+                if (checkedId == R.id.variant_90) {
+                    geometry = CardGeometry.BINGO_90;
+                } else if (checkedId == R.id.variant_speed) {
+                    geometry = CardGeometry.SPEED_16;
+                } else {
+                    geometry = CardGeometry.BINGO_75;
+                }
+
+                SharedPreferences.Editor editor = gamePrefs.edit();
+                editor.putInt(KEY_VARIANT, geometry.getId());
+                editor.apply();
+
+                Toast.makeText(SettingsActivity.this, geometry.getName() + " saved! Applies to your next game.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        winPatternsEditText.setText(gamePrefs.getString(KEY_WIN_PATTERNS, ""));
+        saveWinPatternsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                String spec = winPatternsEditText.getText().toString().trim();
+                SharedPreferences.Editor editor = gamePrefs.edit();
+                if (spec.isEmpty()) {
+                    editor.remove(KEY_WIN_PATTERNS);
+                    editor.apply();
+                    Toast.makeText(SettingsActivity.this, "Standard lines saved! Applies to your next game.", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                // Checked against the chosen variant; a game of another variant falls back to lines if they do not fit it
+                CardGeometry geometry = CardGeometry.byId(gamePrefs.getInt(KEY_VARIANT, CardGeometry.BINGO_75.getId()));
+                if (geometry == null) {
+                    geometry = CardGeometry.BINGO_75;
+                }
+                try {
+                    PatternRegistry.parse(geometry, spec);
+                } catch (IllegalArgumentException e) {
+                    new AlertDialog.Builder(SettingsActivity.this)
+                            .setTitle("Invalid Win Patterns")
+                            .setMessage(e.getMessage())
+                            .setPositiveButton("OK", null)
+                            .show();
+                    return;
+                }
+
+                editor.putString(KEY_WIN_PATTERNS, spec);
+                editor.apply();
+                Toast.makeText(SettingsActivity.this, "Win patterns saved! Applies to your next game.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        journalCheckBox.setChecked(gamePrefs.getBoolean(KEY_JOURNAL, false));
+        journalCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                SharedPreferences.Editor editor = gamePrefs.edit();
+                editor.putBoolean(KEY_JOURNAL, isChecked);
+                editor.apply();
+
+                Toast.makeText(SettingsActivity.this, "Journal setting saved! Applies when the app next starts.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        metricsCheckBox.setChecked(gamePrefs.getBoolean(KEY_METRICS, false));
+        metricsCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                SharedPreferences.Editor editor = gamePrefs.edit();
+                editor.putBoolean(KEY_METRICS, isChecked);
+                editor.apply();
+                Metrics.setEnabled(isChecked);
+            }
+        });
+
+        leaderboardButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(SettingsActivity.this, LeaderboardActivity.class));
+            }
+        });
+
         logoutButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -100,4 +248,10 @@ public class SettingsActivity extends AppCompatActivity {
             }
         });
     }
+
+    private static int variantButtonId(int geometryId) {
+        if (geometryId == CardGeometry.BINGO_90.getId()) return R.id.variant_90;
+        if (geometryId == CardGeometry.SPEED_16.getId()) return R.id.variant_speed;
+        return R.id.variant_75;
+    }
 }
\ No newline at end of file
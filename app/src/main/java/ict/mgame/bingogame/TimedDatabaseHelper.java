@@ -0,0 +1,306 @@
+package ict.mgame.bingogame;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.Metrics;
+
+/**
+ * A {@link DatabaseHelper} that records the latency of each data method in {@link Metrics}, as "db.&lt;method&gt;"
+ * shared by overloads. Calls one helper method makes to another are timed under both.
+ */
+public class TimedDatabaseHelper extends DatabaseHelper {
+    private static final Metrics.Timer DB_USER_EXISTS = Metrics.timer("db.userExists");
+    private static final Metrics.Timer DB_INSERT_USER = Metrics.timer("db.insertUser");
+    private static final Metrics.Timer DB_VALIDATE_LOGIN = Metrics.timer("db.validateLogin");
+    private static final Metrics.Timer DB_UPDATE_PASSWORD = Metrics.timer("db.updatePassword");
+    private static final Metrics.Timer DB_GET_USER_ID = Metrics.timer("db.getUserId");
+    private static final Metrics.Timer DB_GET_USERNAME = Metrics.timer("db.getUsername");
+    private static final Metrics.Timer DB_GET_USER_PROFILE = Metrics.timer("db.getUserProfile");
+    private static final Metrics.Timer DB_GET_WINS = Metrics.timer("db.getWins");
+    private static final Metrics.Timer DB_INCREMENT_WINS = Metrics.timer("db.incrementWins");
+    private static final Metrics.Timer DB_ADD_WINS = Metrics.timer("db.addWins");
+    private static final Metrics.Timer DB_GET_COINS = Metrics.timer("db.getCoins");
+    private static final Metrics.Timer DB_UPDATE_COINS = Metrics.timer("db.updateCoins");
+    private static final Metrics.Timer DB_ADD_COINS = Metrics.timer("db.addCoins");
+    private static final Metrics.Timer DB_GET_DAILY_RESETS = Metrics.timer("db.getDailyResets");
+    private static final Metrics.Timer DB_GET_LAST_RESET_DATE = Metrics.timer("db.getLastResetDate");
+    private static final Metrics.Timer DB_UPDATE_DAILY_RESETS = Metrics.timer("db.updateDailyResets");
+    private static final Metrics.Timer DB_START_GAME = Metrics.timer("db.startGame");
+    private static final Metrics.Timer DB_SET_DRAW_INDEX = Metrics.timer("db.setDrawIndex");
+    private static final Metrics.Timer DB_GET_JOURNAL_CHECKPOINT = Metrics.timer("db.getJournalCheckpoint");
+    private static final Metrics.Timer DB_SET_JOURNAL_CHECKPOINT = Metrics.timer("db.setJournalCheckpoint");
+    private static final Metrics.Timer DB_GET_ACTIVE_GAME_ID = Metrics.timer("db.getActiveGameId");
+    private static final Metrics.Timer DB_APPEND_DRAW = Metrics.timer("db.appendDraw");
+    private static final Metrics.Timer DB_GET_GAME_STATE = Metrics.timer("db.getGameState");
+    private static final Metrics.Timer DB_GET_RANK = Metrics.timer("db.getRank");
+    private static final Metrics.Timer DB_GET_LEADERBOARD_PAGE = Metrics.timer("db.getLeaderboardPage");
+
+    public TimedDatabaseHelper(@Nullable Context context) {
+        super(context);
+    }
+
+    @Override
+    public boolean userExists(String username) {
+        long start = Metrics.start();
+        try {
+            return super.userExists(username);
+        } finally {
+            DB_USER_EXISTS.stop(start);
+        }
+    }
+
+    @Override
+    public void insertUser(String username, String password) {
+        long start = Metrics.start();
+        try {
+            super.insertUser(username, password);
+        } finally {
+            DB_INSERT_USER.stop(start);
+        }
+    }
+
+    @Override
+    public boolean validateLogin(String username, String password) {
+        long start = Metrics.start();
+        try {
+            return super.validateLogin(username, password);
+        } finally {
+            DB_VALIDATE_LOGIN.stop(start);
+        }
+    }
+
+    @Override
+    public void updatePassword(String username, String newPassword) {
+        long start = Metrics.start();
+        try {
+            super.updatePassword(username, newPassword);
+        } finally {
+            DB_UPDATE_PASSWORD.stop(start);
+        }
+    }
+
+    @Override
+    public int getUserId(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getUserId(username);
+        } finally {
+            DB_GET_USER_ID.stop(start);
+        }
+    }
+
+    @Override
+    public String getUsername(int userId) {
+        long start = Metrics.start();
+        try {
+            return super.getUsername(userId);
+        } finally {
+            DB_GET_USERNAME.stop(start);
+        }
+    }
+
+    @Override
+    public UserProfile getUserProfile(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getUserProfile(username);
+        } finally {
+            DB_GET_USER_PROFILE.stop(start);
+        }
+    }
+
+    @Override
+    public int getWins(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getWins(username);
+        } finally {
+            DB_GET_WINS.stop(start);
+        }
+    }
+
+    @Override
+    public void incrementWins(String username) {
+        long start = Metrics.start();
+        try {
+            super.incrementWins(username);
+        } finally {
+            DB_INCREMENT_WINS.stop(start);
+        }
+    }
+
+    @Override
+    public void addWins(String username, int delta) {
+        long start = Metrics.start();
+        try {
+            super.addWins(username, delta);
+        } finally {
+            DB_ADD_WINS.stop(start);
+        }
+    }
+
+    @Override
+    public int getCoins(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getCoins(username);
+        } finally {
+            DB_GET_COINS.stop(start);
+        }
+    }
+
+    @Override
+    public void updateCoins(String username, int newCoins) {
+        long start = Metrics.start();
+        try {
+            super.updateCoins(username, newCoins);
+        } finally {
+            DB_UPDATE_COINS.stop(start);
+        }
+    }
+
+    @Override
+    public void addCoins(String username, int delta) {
+        long start = Metrics.start();
+        try {
+            super.addCoins(username, delta);
+        } finally {
+            DB_ADD_COINS.stop(start);
+        }
+    }
+
+    @Override
+    public int getDailyResets(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getDailyResets(username);
+        } finally {
+            DB_GET_DAILY_RESETS.stop(start);
+        }
+    }
+
+    @Override
+    public String getLastResetDate(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getLastResetDate(username);
+        } finally {
+            DB_GET_LAST_RESET_DATE.stop(start);
+        }
+    }
+
+    @Override
+    public void updateDailyResets(String username, int newResets, String newDate) {
+        long start = Metrics.start();
+        try {
+            super.updateDailyResets(username, newResets, newDate);
+        } finally {
+            DB_UPDATE_DAILY_RESETS.stop(start);
+        }
+    }
+
+    @Override
+    public long startGame(String username, CardGeometry geometry, int cardCount, long seed) {
+        long start = Metrics.start();
+        try {
+            return super.startGame(username, geometry, cardCount, seed);
+        } finally {
+            DB_START_GAME.stop(start);
+        }
+    }
+
+    @Override
+    public void setDrawIndex(long gameId, int drawIndex) {
+        long start = Metrics.start();
+        try {
+            super.setDrawIndex(gameId, drawIndex);
+        } finally {
+            DB_SET_DRAW_INDEX.stop(start);
+        }
+    }
+
+    @Override
+    public int getJournalCheckpoint() {
+        long start = Metrics.start();
+        try {
+            return super.getJournalCheckpoint();
+        } finally {
+            DB_GET_JOURNAL_CHECKPOINT.stop(start);
+        }
+    }
+
+    @Override
+    public void setJournalCheckpoint(int lastSeq) {
+        long start = Metrics.start();
+        try {
+            super.setJournalCheckpoint(lastSeq);
+        } finally {
+            DB_SET_JOURNAL_CHECKPOINT.stop(start);
+        }
+    }
+
+    @Override
+    public long getActiveGameId(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getActiveGameId(username);
+        } finally {
+            DB_GET_ACTIVE_GAME_ID.stop(start);
+        }
+    }
+
+    @Override
+    public void appendDraw(long gameId, int seq, int number) {
+        long start = Metrics.start();
+        try {
+            super.appendDraw(gameId, seq, number);
+        } finally {
+            DB_APPEND_DRAW.stop(start);
+        }
+    }
+
+    @Override
+    public void addCoins(String username, int delta, long lastAccrualAt) {
+        long start = Metrics.start();
+        try {
+            super.addCoins(username, delta, lastAccrualAt);
+        } finally {
+            DB_ADD_COINS.stop(start);
+        }
+    }
+
+    @Override
+    public GameState getGameState(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getGameState(username);
+        } finally {
+            DB_GET_GAME_STATE.stop(start);
+        }
+    }
+
+    @Override
+    public int getRank(String username) {
+        long start = Metrics.start();
+        try {
+            return super.getRank(username);
+        } finally {
+            DB_GET_RANK.stop(start);
+        }
+    }
+
+    @Override
+    public List<LeaderboardRow> getLeaderboardPage(boolean byCoins, @Nullable LeaderboardRow after, int limit) {
+        long start = Metrics.start();
+        try {
+            return super.getLeaderboardPage(byCoins, after, limit);
+        } finally {
+            DB_GET_LEADERBOARD_PAGE.stop(start);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package ict.mgame.bingogame;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.GameJournal;
+import ict.mgame.bingogame.engine.Metrics;
+
+/**
+ * Write-behind persistence for per-draw updates (coins, new games, draw counts and draw log entries, wins).
+ * Updates are coalesced per user in memory and written by a single background thread in one transaction,
+ * so the UI thread never waits on SQLite. Call {@link #flush()} from onPause to commit pending updates before
+ * anything reads the database again; it returns at once when everything queued has already been committed. A batch
+ * that fails to commit is put back in front of the updates queued since and retried.
+ * <p>
+ * With {@link SettingsActivity#KEY_JOURNAL} on, every update is first appended to a memory-mapped {@link GameJournal},
+ * which survives the process being killed, and the SQLite commits become periodic snapshots that record how far into
+ * the journal they reach. On startup the journal records after the last snapshot are replayed into SQLite, whatever
+ * the setting is now: a journal left by a run that had it on is always replayed and then emptied, so its records
+ * can never be applied again to a database that has moved on. The setting only decides whether new updates are
+ * journaled.
+ */
+public class WriteBehindStore {
+    private static final String TAG = "WriteBehindStore";
+
+    private static final String JOURNAL_FILE = "game.journal";
+    private static final int JOURNAL_CAPACITY = 32 * 1024;
+    // How long updates stay journaled before a snapshot commits them, unless the journal fills past half first
+    private static final long SNAPSHOT_INTERVAL_MS = 5000;
+
+    // Journal record types; a, b and c are the record's payload fields
+    private static final int RECORD_COINS = 1; // a = delta, b = accrual timestamp or -1
+    private static final int RECORD_START = 2; // a = card count, b = seed, c = CardGeometry id
+    private static final int RECORD_DRAW_INDEX = 3; // a = draw count
+    private static final int RECORD_DRAW = 4; // a = position in the call order, c = number
+    private static final int RECORD_WIN = 5; // a = wins
+
+    private static final Metrics.Timer COMMIT = Metrics.timer("store.commit");
+    private static final Metrics.Timer JOURNAL_APPEND = Metrics.timer("store.journalAppend");
+
+    private static WriteBehindStore instance;
+
+    private final DatabaseHelper dbHelper;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bingo-db-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Runnable flushTask = this::writePending;
+
+    // Guarded by this
+    private Map<String, PendingUpdate> pending = new HashMap<>();
+    // A delayed snapshot, or an immediate write, is waiting on the writer thread
+    private boolean flushScheduled;
+    private boolean flushQueued;
+    // Counts queued updates; committedVersion is the count covered by the last successful commit
+    private long queuedVersion;
+    private long committedVersion;
+    // Null when journaling is off
+    private GameJournal journal;
+    // The last journal record queued; journaled updates up to it are pending or committed
+    private int journaledSeq;
+    // Row id per username, looked up once for journal records
+    private final Map<String, Integer> userIds = new HashMap<>();
+
+    // Writer thread only: active game id per user, looked up once
+    private final Map<String, Long> activeGameIds = new HashMap<>();
+
+    private static class PendingUpdate {
+        int coinsDelta;
+        long lastAccrualAt = -1; // Latest passive-income timestamp, -1 if unchanged
+        // New games and draws in the order they happened
+        final List<GameEvent> gameEvents = new ArrayList<>();
+        int winsDelta;
+    }
+
+    private static class GameEvent {
+        static final int START = 0;
+        static final int DRAW_INDEX = 1;
+        static final int DRAW = 2;
+
+        final int type;
+        final CardGeometry geometry;
+        final int cardCount;
+        final long seed;
+        // The draw count for DRAW_INDEX, the position in the call order for DRAW
+        int seq;
+        final int number;
+
+        GameEvent(int type, CardGeometry geometry, int cardCount, long seed, int seq, int number) {
+            this.type = type;
+            this.geometry = geometry;
+            this.cardCount = cardCount;
+            this.seed = seed;
+            this.seq = seq;
+            this.number = number;
+        }
+    }
+
+    private WriteBehindStore(Context context) {
+        dbHelper = new TimedDatabaseHelper(context.getApplicationContext());
+        boolean journaling = context.getSharedPreferences(SettingsActivity.GAME_PREFS, Context.MODE_PRIVATE)
+                .getBoolean(SettingsActivity.KEY_JOURNAL, false);
+        File file = new File(context.getFilesDir(), JOURNAL_FILE);
+        if (journaling || file.exists()) {
+            openJournal(file);
+        }
+        if (!journaling) {
+            closeJournal(file);
+        }
+    }
+
+    /**
+     * Opens the journal and commits the records the last snapshot missed, before anything reads the database.
+     */
+    private void openJournal(File file) {
+        int checkpoint = dbHelper.getJournalCheckpoint();
+        try {
+            journal = new GameJournal(file, JOURNAL_CAPACITY, checkpoint);
+        } catch (IOException e) {
+            Log.w(TAG, "Journal unavailable, writing behind without it", e);
+            return;
+        }
+        synchronized (this) {
+            journal.replay(checkpoint, (seq, type, userId, a, b, c) -> {
+                String username = dbHelper.getUsername(userId);
+                if (username != null) {
+                    userIds.put(username, userId);
+                    queue(username, type, a, b, c);
+                }
+                journaledSeq = seq;
+            });
+        }
+        commit();
+    }
+
+    /**
+     * Stops journaling and deletes the journal once its replay has been committed. If the replay failed the journal
+     * stays on, so the records are still there to retry on the next start.
+     */
+    private synchronized void closeJournal(File file) {
+        if (journal == null || committedVersion != queuedVersion) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close the journal", e);
+        }
+        journal = null;
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete the journal");
+        }
+    }
+
+    public static synchronized WriteBehindStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new WriteBehindStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a coin change (negative to debit); queued changes are summed and applied as one increment.
+     */
+    public synchronized void addCoins(String username, int delta) {
+        record(username, RECORD_COINS, delta, -1, 0);
+    }
+
+    /**
+     * Queues a coin change that materializes passive income up to the given accrual timestamp.
+     */
+    public synchronized void addCoins(String username, int delta, long lastAccrualAt) {
+        record(username, RECORD_COINS, delta, lastAccrualAt, 0);
+    }
+
+    /**
+     * Queues the start of a new seeded game.
+     *
+     * @param geometry  The variant being played.
+     * @param cardCount The number of cards in the game.
+     * @param seed      The seed the game was dealt from.
+     */
+    public synchronized void startGame(String username, CardGeometry geometry, int cardCount, long seed) {
+        record(username, RECORD_START, cardCount, seed, geometry.getId());
+    }
+
+    /**
+     * Queues the draw count of the user's current seeded game. Counts queued back to back collapse into the latest.
+     *
+     * @param drawIndex The number of calls made so far.
+     */
+    public synchronized void setDrawIndex(String username, int drawIndex) {
+        record(username, RECORD_DRAW_INDEX, drawIndex, 0, 0);
+    }
+
+    /**
+     * Queues one called number for the user's current game, when that game was saved before seeds.
+     *
+     * @param seq    The position of the number in the call order, starting at 0.
+     * @param number The called number.
+     */
+    public synchronized void appendDraw(String username, int seq, int number) {
+        record(username, RECORD_DRAW, seq, 0, number);
+    }
+
+    /**
+     * Queues a win; queued wins are added together when written.
+     */
+    public synchronized void incrementWins(String username) {
+        record(username, RECORD_WIN, 1, 0, 0);
+    }
+
+    /**
+     * Writes all pending updates and blocks until they are committed. The journal already keeps them through a
+     * process kill, but the game and profile are read back from SQLite when the activity is recreated, so the
+     * snapshot cannot be left to its timer.
+     */
+    public void flush() {
+        commit();
+    }
+
+    /**
+     * Writes all pending updates and blocks until they are committed.
+     */
+    private void commit() {
+        synchronized (this) {
+            if (committedVersion == queuedVersion) return;
+        }
+        Future<?> done = writer.submit(flushTask);
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Flush failed", e.getCause());
+        }
+    }
+
+    /**
+     * Journals one update, if the journal is on, and queues it. Caller holds the lock.
+     */
+    private void record(String username, int type, int a, long b, int c) {
+        if (journal != null) {
+            long start = Metrics.start();
+            int seq;
+            try {
+                seq = journal.append(type, userId(username), a, b, c);
+            } finally {
+                JOURNAL_APPEND.stop(start);
+            }
+            if (seq >= 0) {
+                journaledSeq = seq;
+            } else {
+                // Full: this update is only in memory until the snapshot, which starts now
+                writer.execute(flushTask);
+            }
+        }
+        queue(username, type, a, b, c);
+    }
+
+    /**
+     * Adds one update to the user's pending batch and schedules it to be written. Caller holds the lock.
+     */
+    private void queue(String username, int type, int a, long b, int c) {
+        PendingUpdate update = pendingFor(username);
+        switch (type) {
+            case RECORD_COINS:
+                update.coinsDelta += a;
+                if (b >= 0) update.lastAccrualAt = b;
+                break;
+            case RECORD_START:
+                CardGeometry geometry = CardGeometry.byId(c);
+                if (geometry == null) return;
+                update.gameEvents.add(new GameEvent(GameEvent.START, geometry, a, b, 0, 0));
+                break;
+            case RECORD_DRAW_INDEX:
+                List<GameEvent> events = update.gameEvents;
+                GameEvent last = events.isEmpty() ? null : events.get(events.size() - 1);
+                if (last != null && last.type == GameEvent.DRAW_INDEX) {
+                    last.seq = a;
+                } else {
+                    events.add(new GameEvent(GameEvent.DRAW_INDEX, null, 0, 0, a, 0));
+                }
+                break;
+            case RECORD_DRAW:
+                update.gameEvents.add(new GameEvent(GameEvent.DRAW, null, 0, 0, a, c));
+                break;
+            case RECORD_WIN:
+                update.winsDelta += a;
+                break;
+            default:
+                return;
+        }
+        scheduleFlush();
+    }
+
+    private int userId(String username) {
+        Integer userId = userIds.get(username);
+        if (userId == null) {
+            userId = dbHelper.getUserId(username);
+            userIds.put(username, userId);
+        }
+        return userId;
+    }
+
+    private PendingUpdate pendingFor(String username) {
+        PendingUpdate update = pending.get(username);
+        if (update == null) {
+            update = new PendingUpdate();
+            pending.put(username, update);
+        }
+        return update;
+    }
+
+    private long activeGameId(String username) {
+        Long gameId = activeGameIds.get(username);
+        if (gameId == null) {
+            gameId = dbHelper.getActiveGameId(username);
+            activeGameIds.put(username, gameId);
+        }
+        return gameId;
+    }
+
+    /**
+     * Writes the pending updates now without the journal, and with it once the snapshot interval is up or as soon as
+     * the journal is more than half full, whichever comes first. Caller holds the lock.
+     */
+    private void scheduleFlush() {
+        queuedVersion++;
+        if (journal == null || journal.size() > journal.getCapacity() / 2) {
+            if (!flushQueued) {
+                flushQueued = true;
+                writer.execute(flushTask);
+            }
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(flushTask, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Puts a batch that failed to commit back in front of the updates queued since, and retries it after the
+     * snapshot interval. Writer thread only.
+     */
+    private synchronized void requeue(Map<String, PendingUpdate> batch) {
+        for (Map.Entry<String, PendingUpdate> entry : batch.entrySet()) {
+            PendingUpdate failed = entry.getValue();
+            PendingUpdate later = pending.get(entry.getKey());
+            if (later != null) {
+                failed.coinsDelta += later.coinsDelta;
+                if (later.lastAccrualAt >= 0) failed.lastAccrualAt = later.lastAccrualAt;
+                failed.gameEvents.addAll(later.gameEvents);
+                failed.winsDelta += later.winsDelta;
+            }
+            pending.put(entry.getKey(), failed);
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(flushTask, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the writer thread: takes everything queued so far and commits it in a single transaction.
+     */
+    private void writePending() {
+        Map<String, PendingUpdate> batch;
+        long batchVersion;
+        int batchSeq;
+        synchronized (this) {
+            flushScheduled = false;
+            flushQueued = false;
+            if (pending.isEmpty()) return;
+            batch = pending;
+            batchVersion = queuedVersion;
+            batchSeq = journaledSeq;
+            pending = new HashMap<>();
+        }
+        long start = Metrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        boolean committed = false;
+        db.beginTransactionNonExclusive();
+        try {
+            for (Map.Entry<String, PendingUpdate> entry : batch.entrySet()) {
+                String username = entry.getKey();
+                PendingUpdate update = entry.getValue();
+                // Coin debits and the draws they paid for commit together in this transaction
+                if (update.lastAccrualAt >= 0) {
+                    dbHelper.addCoins(username, update.coinsDelta, update.lastAccrualAt);
+                } else if (update.coinsDelta != 0) {
+                    dbHelper.addCoins(username, update.coinsDelta);
+                }
+                for (GameEvent event : update.gameEvents) {
+                    if (event.type == GameEvent.START) {
+                        activeGameIds.put(username, dbHelper.startGame(username, event.geometry, event.cardCount, event.seed));
+                        continue;
+                    }
+                    long gameId = activeGameId(username);
+                    if (gameId < 0) continue;
+                    if (event.type == GameEvent.DRAW_INDEX) {
+                        dbHelper.setDrawIndex(gameId, event.seq);
+                    } else {
+                        dbHelper.appendDraw(gameId, event.seq, event.number);
+                    }
+                }
+                if (update.winsDelta != 0) {
+                    dbHelper.addWins(username, update.winsDelta);
+                }
+            }
+            if (journal != null) {
+                dbHelper.setJournalCheckpoint(batchSeq);
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            COMMIT.stop(start);
+            // The helper dropped these profiles before the commit, when a read could still see and cache the old rows
+            for (String username : batch.keySet()) {
+                DatabaseHelper.invalidateProfile(username);
+            }
+            if (!committed) {
+                // Games started in the rolled back transaction do not exist, and the leaderboard already moved for
+                // its wins
+                activeGameIds.clear();
+                DatabaseHelper.invalidateLeaderboard();
+                requeue(batch);
+            }
+        }
+        synchronized (this) {
+            committedVersion = batchVersion;
+            // Once nothing has been queued since the batch was taken, every record is in the snapshot
+            if (journal != null && committedVersion == queuedVersion) {
+                journal.reset();
+            }
+        }
+    }
+}
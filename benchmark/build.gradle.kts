@@ -0,0 +1,22 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    jmh(project(":engine"))
+}
+
+// Run with: ./gradlew :benchmark:jmh  (results in benchmark/build/results/jmh)
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    // Narrow the run with -Pjmh.includes=<regex>, e.g. -Pjmh.includes=WinCheck
+    (project.findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+}
@@ -0,0 +1,56 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CardGenerator;
+import ict.mgame.bingogame.engine.CardGeometry;
+
+/**
+ * Throughput of generating 5x5 cards: one at a time through the allocating convenience method, one at a time into a
+ * reused array, and in bulk as a pool of unique cards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardGenerationBenchmark {
+    private static final int POOL_SIZE = 100_000;
+
+    private final Random random = new Random(42);
+    private final CardGenerator generator = new CardGenerator(CardGeometry.BINGO_75, random);
+    private final int[] pool = new int[POOL_SIZE * BingoEngine.CELLS];
+
+    @Benchmark
+    public int[] generateCard() {
+        return BingoEngine.generateCard(random);
+    }
+
+    @Benchmark
+    public int[] generateInto() {
+        generator.generate(pool, 0);
+        return pool;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POOL_SIZE)
+    public int[] fillUniquePool() {
+        generator.clearIssued();
+        generator.fill(pool, POOL_SIZE);
+        return pool;
+    }
+}
@@ -0,0 +1,60 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+
+/**
+ * The draw and mark path behind BingoGame.performDraw, alone and as a whole game played to the first bingo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+    private BingoEngine engine;
+    private int[] card;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        engine = new BingoEngine(random);
+        card = BingoEngine.generateCard(random);
+        engine.setCard(card, 0);
+    }
+
+    @Benchmark
+    public int drawAndMark() {
+        if (engine.getDrawCount() >= BingoEngine.MAX_NUMBER) {
+            engine.resetDeck();
+            engine.setCard(card, 0);
+        }
+        return engine.draw();
+    }
+
+    @Benchmark
+    public int playToBingo() {
+        engine.resetDeck();
+        engine.setCard(card, 0);
+        int draws = 0;
+        while (!engine.hasBingo()) {
+            engine.draw();
+            draws++;
+        }
+        return draws;
+    }
+}
@@ -0,0 +1,97 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.GameStateCodec;
+
+/**
+ * The DatabaseHelper save/load encodings for a mid-game state (40 numbers drawn): the legacy comma-separated
+ * text helpers next to the binary format that replaced them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateCodecBenchmark {
+    private BingoEngine engine;
+    private byte[] blob;
+    private int[][] card;
+    private List<Integer> drawn;
+    private boolean[][] marked;
+    private String cardStr;
+    private String drawnStr;
+    private String markedStr;
+
+    @Setup
+    public void setup() {
+        engine = new BingoEngine(new Random(42));
+        engine.newGame();
+        for (int i = 0; i < 40; i++) {
+            engine.draw();
+        }
+        card = engine.getCard();
+        drawn = new ArrayList<>(engine.getDrawnNumbers());
+        marked = engine.getMarked();
+        cardStr = GameStateCodec.serializeCard(card);
+        drawnStr = GameStateCodec.serializeList(drawn);
+        markedStr = GameStateCodec.serializeMarked(marked);
+        blob = GameStateCodec.encode(engine);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return GameStateCodec.encode(engine);
+    }
+
+    @Benchmark
+    public boolean decodeBinary() {
+        return GameStateCodec.decode(blob, engine);
+    }
+
+    @Benchmark
+    public String serializeCard() {
+        return GameStateCodec.serializeCard(card);
+    }
+
+    @Benchmark
+    public String serializeList() {
+        return GameStateCodec.serializeList(drawn);
+    }
+
+    @Benchmark
+    public String serializeMarked() {
+        return GameStateCodec.serializeMarked(marked);
+    }
+
+    @Benchmark
+    public int[][] deserializeCard() {
+        return GameStateCodec.deserializeCard(cardStr);
+    }
+
+    @Benchmark
+    public List<Integer> deserializeList() {
+        return GameStateCodec.deserializeList(drawnStr);
+    }
+
+    @Benchmark
+    public boolean[][] deserializeMarked() {
+        return GameStateCodec.deserializeMarked(markedStr);
+    }
+}
@@ -0,0 +1,57 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.GameJournal;
+
+/**
+ * Cost of appending one draw record to a memory-mapped journal segment, starting the segment over whenever it fills.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    private static final int CAPACITY = 1 << 20;
+
+    private File file;
+    private GameJournal journal;
+    private int drawIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("bingo", ".journal");
+        journal = new GameJournal(file, CAPACITY, 0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int append() {
+        if (journal.size() == CAPACITY) {
+            journal.reset();
+        }
+        drawIndex++;
+        return journal.append(3, 1, drawIndex, 0, 0);
+    }
+}
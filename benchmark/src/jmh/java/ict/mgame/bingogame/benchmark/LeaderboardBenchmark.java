@@ -0,0 +1,74 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.Leaderboard;
+
+/**
+ * Leaderboard operations over a million players whose wins follow a long-tailed spread: a rank lookup, a win that
+ * moves a random player (now and then into the top list), and a copy of the top list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class LeaderboardBenchmark {
+    @Param({"1000000"})
+    public int players;
+
+    private Leaderboard leaderboard;
+    private String[] names;
+    private int[] wins;
+    private Random random;
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        names = new String[players];
+        wins = new int[players];
+        List<Leaderboard.Entry> everyone = new ArrayList<>(players);
+        leaderboard = new Leaderboard(100);
+        for (int i = 0; i < players; i++) {
+            names[i] = "player" + i;
+            wins[i] = (int) (-20 * Math.log(1 - random.nextDouble()));
+            leaderboard.addPlayers(wins[i], 1);
+            everyone.add(new Leaderboard.Entry(names[i], wins[i]));
+        }
+        everyone.sort(Comparator.comparingInt((Leaderboard.Entry entry) -> -entry.wins).thenComparing(entry -> entry.name));
+        leaderboard.setTop(everyone.subList(0, leaderboard.getTopSize()));
+    }
+
+    @Benchmark
+    public int rankOf() {
+        return leaderboard.rankOf(wins[random.nextInt(players)]);
+    }
+
+    @Benchmark
+    public void win() {
+        int player = random.nextInt(players);
+        leaderboard.changeWins(names[player], wins[player], ++wins[player]);
+    }
+
+    @Benchmark
+    public List<Leaderboard.Entry> top() {
+        return leaderboard.getTop();
+    }
+}
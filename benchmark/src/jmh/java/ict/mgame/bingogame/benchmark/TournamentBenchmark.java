@@ -0,0 +1,82 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CardGenerator;
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.TournamentEngine;
+
+/**
+ * One call applied to a whole tournament of cards, on one thread and split across partitions. Each invocation plays a
+ * full 75-number game, so the reported time per call includes 1/75th of a reset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TournamentBenchmark {
+    @Param({"1000000"})
+    public int cards;
+
+    @Param({"1", "2", "4"})
+    public int partitions;
+
+    private TournamentEngine engine;
+    private ExecutorService executor;
+    private final int[] order = new int[BingoEngine.MAX_NUMBER];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int[] pool = new int[cards * BingoEngine.CELLS];
+        new CardGenerator(CardGeometry.BINGO_75, random).fill(pool, cards);
+        byte[] numbers = new byte[pool.length];
+        for (int i = 0; i < pool.length; i++) {
+            numbers[i] = (byte) pool[i];
+        }
+        engine = new TournamentEngine(numbers, cards, partitions);
+        executor = Executors.newFixedThreadPool(partitions);
+
+        BingoEngine caller = new BingoEngine(random);
+        caller.resetDeck();
+        for (int i = 0; i < order.length; i++) {
+            order[i] = caller.draw();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BingoEngine.MAX_NUMBER)
+    public int call() throws InterruptedException {
+        engine.reset();
+        int winners = 0;
+        for (int number : order) {
+            winners += engine.call(number, executor);
+        }
+        return winners;
+    }
+}
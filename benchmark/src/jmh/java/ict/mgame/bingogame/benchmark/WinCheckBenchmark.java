@@ -0,0 +1,84 @@
+package ict.mgame.bingogame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.PatternRegistry;
+import ict.mgame.bingogame.engine.WinPattern;
+
+/**
+ * checkForBingo over a rotating set of mid-game mark states, most of which are not yet a win, and a full check of
+ * the same states against an event's worth of win patterns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WinCheckBenchmark {
+    private static final int STATES = 1024;
+
+    private final BingoEngine[] engines = new BingoEngine[STATES];
+    private final long[] markedMasks = new long[STATES];
+    private PatternRegistry eventPatterns;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < STATES; i++) {
+            BingoEngine engine = new BingoEngine(random);
+            engine.newGame();
+            int draws = random.nextInt(40);
+            for (int d = 0; d < draws; d++) {
+                engine.draw();
+            }
+            engines[i] = engine;
+            markedMasks[i] = engine.getMarkedMask();
+        }
+
+        // The built-ins plus 32 random custom shapes of 8 to 12 cells
+        WinPattern[] patterns = new WinPattern[37];
+        CardGeometry geometry = CardGeometry.BINGO_75;
+        patterns[0] = WinPattern.line(geometry);
+        patterns[1] = WinPattern.fourCorners(geometry);
+        patterns[2] = WinPattern.x(geometry);
+        patterns[3] = WinPattern.postageStamp(geometry);
+        patterns[4] = WinPattern.blackout(geometry);
+        for (int p = 5; p < patterns.length; p++) {
+            long mask = 0;
+            int cells = 8 + random.nextInt(5);
+            while (Long.bitCount(mask) < cells) {
+                mask |= 1L << random.nextInt(geometry.getCells());
+            }
+            patterns[p] = new WinPattern("Custom " + p, mask);
+        }
+        eventPatterns = new PatternRegistry(geometry, patterns);
+    }
+
+    @Benchmark
+    public boolean checkForBingo() {
+        next = (next + 1) & (STATES - 1);
+        return engines[next].hasBingo();
+    }
+
+    @Benchmark
+    public int matchEventPatterns() {
+        next = (next + 1) & (STATES - 1);
+        return eventPatterns.match(markedMasks[next]);
+    }
+}
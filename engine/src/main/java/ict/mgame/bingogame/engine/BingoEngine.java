@@ -0,0 +1,437 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * View-free bingo engine: card generation, draw, mark and win detection for one or more cards played against a
+ * single draw sequence. The variant is set by a {@link CardGeometry}, classic 75-ball by default; the constants below
+ * describe that default. Cells are indexed as row * columns + col, and FREE and blank cells hold the number 0.
+ * The single-card accessors refer to card 0.
+ * <p>
+ * New games are dealt from a seed, which fixes both the cards and the call order, so a game in progress is fully
+ * described by its variant, card count, seed and draw count, and {@link #resumeGame} replays it exactly. The seeds
+ * stay valid only as long as {@link CardGenerator} and the deck shuffle deal the same way.
+ */
+public class BingoEngine {
+    // The classic 75-ball geometry
+    public static final int SIZE = 5;
+    public static final int CELLS = SIZE * SIZE;
+    public static final int MAX_NUMBER = 75;
+    public static final int FREE_CELL = 2 * SIZE + 2;
+
+    private final Random random;
+
+    private final CardSet cards = new CardSet();
+    private CardGeometry geometry = CardGeometry.BINGO_75;
+    // Deals the cards of new games; replaced when the variant changes
+    private CardGenerator generator;
+    private int[] newCards = new int[0];
+    // The seed of the current game, if it was dealt from one
+    private long seed;
+    private boolean seeded;
+    // Changes whenever the cards or the deck are replaced
+    private int dealVersion;
+
+    // Shuffled 1..maxNumber; deck[0..drawCount) is the call order so far
+    private int[] deck = new int[MAX_NUMBER];
+    private int drawCount;
+    private final BitSet calledNumbers = new BitSet(MAX_NUMBER + 1);
+    private final List<Integer> drawnNumbers = new AbstractList<Integer>() {
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= drawCount) throw new IndexOutOfBoundsException("Index: " + index);
+            return deck[index];
+        }
+
+        @Override
+        public int size() {
+            return drawCount;
+        }
+    };
+
+    public BingoEngine() {
+        this(new Random());
+    }
+
+    public BingoEngine(Random random) {
+        this.random = random;
+        resetDeck();
+    }
+
+    /**
+     * Starts a new single-card game: generates a fresh card, clears marks and reshuffles the deck.
+     */
+    public void newGame() {
+        newGame(1);
+    }
+
+    /**
+     * Starts a new game of the current variant with the given number of freshly generated cards.
+     *
+     * @param cardCount The number of cards to play.
+     */
+    public void newGame(int cardCount) {
+        newGame(geometry, cardCount);
+    }
+
+    /**
+     * Starts a new game of the given variant with freshly generated cards, no two of them alike, dealt from a new
+     * random seed.
+     *
+     * @param geometry  The variant to play.
+     * @param cardCount The number of cards to play.
+     */
+    public void newGame(CardGeometry geometry, int cardCount) {
+        newGame(geometry, cardCount, random.nextLong());
+    }
+
+    /**
+     * Starts a new game determined by a seed: the same variant, card count and seed always deal the same cards, no
+     * two of them alike, and the same call order.
+     *
+     * @param geometry  The variant to play.
+     * @param cardCount The number of cards to play.
+     * @param seed      The game's seed; see {@link #getSeed()}.
+     */
+    public void newGame(CardGeometry geometry, int cardCount, long seed) {
+        SplittableRandom gameRandom = new SplittableRandom(seed);
+        long cardSeed = gameRandom.nextLong();
+        if (generator == null || generator.getGeometry() != geometry) {
+            generator = new CardGenerator(geometry, cardSeed);
+        } else {
+            generator.reset(cardSeed);
+        }
+        int cells = cardCount * geometry.getCells();
+        if (newCards.length < cells) {
+            newCards = new int[cells];
+        }
+        generator.fill(newCards, cardCount);
+        useGeometry(geometry);
+        cards.setCards(geometry, newCards, cardCount);
+        checkNoWinnersBeforeCalls();
+
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = i + 1;
+        }
+        for (int i = deck.length - 1; i > 0; i--) {
+            int j = gameRandom.nextInt(i + 1);
+            int tmp = deck[i];
+            deck[i] = deck[j];
+            deck[j] = tmp;
+        }
+        drawCount = 0;
+        calledNumbers.clear();
+        this.seed = seed;
+        seeded = true;
+        dealVersion++;
+    }
+
+    /**
+     * Rebuilds a seeded game as it stood after the given number of calls: deals it again from its seed and replays
+     * the calls, recomputing the marks and wins.
+     *
+     * @param geometry  The variant of the game.
+     * @param cardCount The number of cards in the game.
+     * @param seed      The game's seed.
+     * @param drawIndex The number of calls made so far.
+     */
+    public void resumeGame(CardGeometry geometry, int cardCount, long seed, int drawIndex) {
+        newGame(geometry, cardCount, seed);
+        while (drawCount < drawIndex && drawCount < deck.length) {
+            draw();
+        }
+    }
+
+    /**
+     * Replaces all cards with the given ones of the current variant; see {@link #setCards(CardGeometry, int[], int)}.
+     */
+    public void setCards(int[] numbers, int cardCount) {
+        setCards(geometry, numbers, cardCount);
+    }
+
+    /**
+     * Replaces all cards with the given ones, each starting with only its FREE and blank cells marked, and resets
+     * the deck for the variant.
+     *
+     * @param geometry  The variant of the cards.
+     * @param numbers   The card numbers, one per cell by cell index.
+     * @param cardCount The number of cards.
+     */
+    public void setCards(CardGeometry geometry, int[] numbers, int cardCount) {
+        useGeometry(geometry);
+        resetDeck();
+        cards.setCards(geometry, numbers, cardCount);
+        checkNoWinnersBeforeCalls();
+    }
+
+    private void useGeometry(CardGeometry geometry) {
+        if (geometry != this.geometry) {
+            this.geometry = geometry;
+            deck = new int[geometry.getMaxNumber()];
+            resetDeck();
+        }
+    }
+
+    /**
+     * Loads a saved card and mark state. The FREE cell is always marked.
+     *
+     * @param card   The 5x5 array of card numbers, 0 for the FREE cell.
+     * @param marked The 5x5 boolean array of marked cells.
+     */
+    public void loadCard(int[][] card, boolean[][] marked) {
+        useGeometry(CardGeometry.BINGO_75);
+        int[] flat = new int[CELLS];
+        long mask = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                flat[row * SIZE + col] = card[row][col];
+                if (marked[row][col]) mask |= 1L << (row * SIZE + col);
+            }
+        }
+        setCard(flat, mask);
+    }
+
+    /**
+     * Replaces all cards with a single card and mark state of the current variant, and rebuilds the number-to-cell
+     * index. The deck is not reset.
+     *
+     * @param numbers    The card numbers by cell index, 0 for FREE and blank cells.
+     * @param markedMask The mark state.
+     */
+    public void setCard(int[] numbers, long markedMask) {
+        seeded = false;
+        dealVersion++;
+        cards.setCards(geometry, numbers, 1);
+        cards.setMarks(0, cards.getMarks(0) | markedMask);
+    }
+
+    /**
+     * Generates a random 75-ball card: five sorted numbers per column from that column's range of 15, FREE in the
+     * centre.
+     *
+     * @param random The random source.
+     * @return The 25 card numbers by cell index.
+     */
+    public static int[] generateCard(Random random) {
+        return CardGeometry.BINGO_75.generateCard(random);
+    }
+
+    /**
+     * Refills the draw deck with all of the variant's numbers in a fresh Fisher-Yates order and clears the called set.
+     * The call order no longer follows the game's seed.
+     */
+    public void resetDeck() {
+        seeded = false;
+        dealVersion++;
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = i + 1;
+        }
+        shuffleFrom(0);
+        drawCount = 0;
+        calledNumbers.clear();
+    }
+
+    private void shuffleFrom(int start) {
+        for (int i = deck.length - 1; i > start; i--) {
+            int j = start + random.nextInt(i - start + 1);
+            int tmp = deck[i];
+            deck[i] = deck[j];
+            deck[j] = tmp;
+        }
+    }
+
+    /**
+     * Restores previously called numbers so they lead the deck in their original order, and marks them on every card.
+     * The remaining numbers are reshuffled behind them.
+     *
+     * @param drawn The numbers already called, in call order.
+     */
+    public void restoreDrawnNumbers(List<Integer> drawn) {
+        resetDeck();
+        for (int num : drawn) {
+            if (num < 1 || num > deck.length || calledNumbers.get(num)) continue;
+            // Swap the number into the next call slot
+            for (int i = drawCount; i < deck.length; i++) {
+                if (deck[i] == num) {
+                    deck[i] = deck[drawCount];
+                    deck[drawCount] = num;
+                    break;
+                }
+            }
+            drawCount++;
+            calledNumbers.set(num);
+            cards.apply(num);
+        }
+        shuffleFrom(drawCount);
+    }
+
+    /**
+     * Calls the next number and marks it on every card that holds it.
+     * Cards that complete a win pattern with this number are reported by {@link CardSet#getNewWinner(int)}.
+     *
+     * @return The called number, or 0 if every number has been drawn.
+     */
+    public int draw() {
+        if (drawCount >= deck.length) {
+            return 0;
+        }
+        int number = deck[drawCount++];
+        calledNumbers.set(number);
+        cards.apply(number);
+        return number;
+    }
+
+    /**
+     * Returns true once any card has completed an active win pattern.
+     */
+    public boolean hasBingo() {
+        return cards.getWinnerCount() > 0;
+    }
+
+    /**
+     * Returns the cell index on card 0 holding the number, or -1 when it is not on the card.
+     */
+    public int cellOf(int number) {
+        if (number < 1 || number > deck.length) return -1;
+        for (int p = cards.postingStart(number), end = cards.postingEnd(number); p < end; p++) {
+            if (cards.postingCard(p) == 0) return cards.postingCell(p);
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the active win patterns, re-evaluating the current cards against them. The default is the standard lines
+     * of the variant, which new cards of another variant also revert to.
+     */
+    public void setPatterns(PatternRegistry patterns) {
+        cards.setPatterns(patterns);
+        if (drawCount == 0) {
+            checkNoWinnersBeforeCalls();
+        }
+    }
+
+    /**
+     * Fails if a card has won with nothing called, which would report a win for the first call whatever it is.
+     */
+    private void checkNoWinnersBeforeCalls() {
+        if (cards.getWinnerCount() > 0) {
+            throw new IllegalStateException(cards.getWinnerCount() + " cards won before any call on " + geometry);
+        }
+    }
+
+    public PatternRegistry getPatterns() {
+        return cards.getPatterns();
+    }
+
+    public CardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns true if the current game was dealt from a seed rather than loaded from explicit cards.
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Returns a number that changes whenever the cards or the deck are replaced. Together with the draw count it tells
+     * a saver what changed since it last looked: a new game, new calls, or nothing.
+     */
+    public int getDealVersion() {
+        return dealVersion;
+    }
+
+    /**
+     * Returns the seed the current game was dealt from; meaningful only when {@link #isSeeded()}.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public CardSet getCards() {
+        return cards;
+    }
+
+    public int getCardCount() {
+        return cards.getCardCount();
+    }
+
+    public int getNumber(int cell) {
+        return cards.getNumber(0, cell);
+    }
+
+    public boolean isMarked(int cell) {
+        return (cards.getMarks(0) & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns the mark state of card 0, with bit (row * columns + col) set for a marked cell.
+     */
+    public long getMarkedMask() {
+        return cards.getMarks(0);
+    }
+
+    /**
+     * Returns a copy of the numbers of card 0 by cell index.
+     */
+    public int[] getCardNumbers() {
+        return Arrays.copyOf(cards.copyNumbers(), geometry.getCells());
+    }
+
+    /**
+     * Returns a copy of every card's numbers, one per cell.
+     */
+    public int[] getAllCardNumbers() {
+        return cards.copyNumbers();
+    }
+
+    public int[][] getCard() {
+        int columns = geometry.getColumns();
+        int[][] result = new int[geometry.getRows()][columns];
+        for (int row = 0; row < result.length; row++) {
+            for (int col = 0; col < columns; col++) {
+                result[row][col] = getNumber(row * columns + col);
+            }
+        }
+        return result;
+    }
+
+    public boolean[][] getMarked() {
+        int columns = geometry.getColumns();
+        boolean[][] marked = new boolean[geometry.getRows()][columns];
+        for (int row = 0; row < marked.length; row++) {
+            for (int col = 0; col < columns; col++) {
+                marked[row][col] = isMarked(row * columns + col);
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Returns a read-only view of the called numbers in call order.
+     */
+    public List<Integer> getDrawnNumbers() {
+        return drawnNumbers;
+    }
+
+    /**
+     * Returns the number called at the given position in the call order.
+     */
+    public int getDrawnNumber(int index) {
+        return deck[index];
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public boolean isCalled(int number) {
+        return calledNumbers.get(number);
+    }
+}
@@ -0,0 +1,96 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.Arrays;
+
+/**
+ * A set of 64-bit card fingerprints in one open-addressing table with linear probing, with no boxing and no
+ * allocation except when the table grows. Fingerprints are expected to be well mixed already (see
+ * {@link CardGenerator#fingerprint(int[], int, int)}), so their low bits are used as the slot directly.
+ */
+public class CardFingerprintSet {
+    private static final int MIN_CAPACITY = 16;
+
+    // 0 marks an empty slot; the fingerprint 0 itself is tracked by containsZero
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    public CardFingerprintSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize The number of fingerprints to hold without growing.
+     */
+    public CardFingerprintSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expectedSize) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds a fingerprint.
+     *
+     * @return True if it was not in the set yet.
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == 0) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int slot = (int) fingerprint & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == fingerprint) return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = fingerprint;
+        // Keep the load at or below one half so probe runs stay short
+        if (++size > table.length >> 1) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long fingerprint) {
+        if (fingerprint == 0) return containsZero;
+        int slot = (int) fingerprint & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == fingerprint) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length << 1];
+        mask = table.length - 1;
+        for (long fingerprint : old) {
+            if (fingerprint == 0) continue;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+        }
+    }
+
+    /**
+     * Removes all fingerprints, keeping the table's capacity.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        containsZero = false;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,215 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Generates cards of one {@link CardGeometry} into caller-supplied arrays with no allocation per card. Each
+ * column's numbers come from a partial Fisher-Yates pass over a reusable scratch permutation of its range, and
+ * the cards issued since the last {@link #clearIssued()} are remembered by fingerprint so unique cards can be
+ * dealt. Draws come from the generator's own unsynchronized random stream, seeded from the caller's source so a
+ * seeded source still deals the same cards. Not thread-safe; use one generator per thread.
+ */
+public class CardGenerator {
+    // Consecutive duplicates after which the geometry is taken to have run out of distinct cards
+    private static final int MAX_ATTEMPTS = 1000;
+
+    private final CardGeometry geometry;
+    private SplittableRandom random;
+    private final int rows;
+    private final int columns;
+    private final int cells;
+    private final boolean fullRows;
+
+    // pool[n - 1] for every ball n. Each column's slice always holds a permutation of that column's range, and a
+    // Fisher-Yates pass over any permutation is uniform, so the slices are reshuffled in place and never refilled.
+    private final int[] pool;
+    // A permutation of the column indexes, reshuffled the same way to pick the filled columns of a row
+    private final int[] columnOrder;
+    // The number of filled cells in each column of the current layout
+    private final int[] perColumn;
+    // The layout used when every cell but the FREE cell holds a number
+    private final long fullLayout;
+    private final int[] fullPerColumn;
+
+    private final CardFingerprintSet issued = new CardFingerprintSet();
+
+    public CardGenerator(CardGeometry geometry, Random random) {
+        this(geometry, random.nextLong());
+    }
+
+    public CardGenerator(CardGeometry geometry, long seed) {
+        this.geometry = geometry;
+        rows = geometry.getRows();
+        columns = geometry.getColumns();
+        cells = geometry.getCells();
+        fullRows = geometry.getNumbersPerRow() == columns;
+        pool = new int[geometry.getMaxNumber()];
+        columnOrder = new int[columns];
+        perColumn = new int[columns];
+        int freeCell = geometry.getFreeCell();
+        fullLayout = freeCell >= 0 ? geometry.getAllCells() & ~(1L << freeCell) : geometry.getAllCells();
+        fullPerColumn = new int[columns];
+        for (int cell = 0; cell < cells; cell++) {
+            if ((fullLayout & (1L << cell)) != 0) fullPerColumn[cell % columns]++;
+        }
+        reset(seed);
+    }
+
+    /**
+     * Returns the generator to the state of a new one with the given seed: the cards it deals from here on depend on
+     * the seed alone, and no cards count as issued.
+     */
+    public void reset(long seed) {
+        random = new SplittableRandom(seed);
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = i + 1;
+        }
+        for (int col = 0; col < columns; col++) {
+            columnOrder[col] = col;
+        }
+        issued.clear();
+    }
+
+    /**
+     * Generates a random card, which may repeat an earlier one.
+     *
+     * @param out    Receives the card numbers by cell index, 0 for FREE and blank cells.
+     * @param offset The index in out of the card's first cell.
+     */
+    public void generate(int[] out, int offset) {
+        long layout = fullRows ? fullLayout : randomLayout();
+        int[] counts = fullRows ? fullPerColumn : perColumn;
+        for (int col = 0; col < columns; col++) {
+            int base = geometry.getColumnStart(col) - 1;
+            int range = geometry.getColumnStart(col + 1) - 1 - base;
+            int count = counts[col];
+            // Partial Fisher-Yates: the first count slots of the column's slice become its numbers. Ranges of up to
+            // 64 also collect them as bits, which reads them back in ascending order without sorting.
+            long chosen = 0;
+            for (int i = 0; i < count; i++) {
+                int j = base + i + random.nextInt(range - i);
+                int number = pool[j];
+                pool[j] = pool[base + i];
+                pool[base + i] = number;
+                chosen |= 1L << (number - base - 1);
+            }
+            if (range <= 64) {
+                for (int row = 0; row < rows; row++) {
+                    int cell = row * columns + col;
+                    if ((layout & (1L << cell)) != 0) {
+                        out[offset + cell] = base + 1 + Long.numberOfTrailingZeros(chosen);
+                        chosen &= chosen - 1;
+                    } else {
+                        out[offset + cell] = 0;
+                    }
+                }
+                continue;
+            }
+            // Wider ranges: insertion sort of the few chosen numbers
+            for (int i = base + 1; i < base + count; i++) {
+                int number = pool[i];
+                int j = i - 1;
+                while (j >= base && pool[j] > number) {
+                    pool[j + 1] = pool[j];
+                    j--;
+                }
+                pool[j + 1] = number;
+            }
+            int next = base;
+            for (int row = 0; row < rows; row++) {
+                int cell = row * columns + col;
+                out[offset + cell] = (layout & (1L << cell)) != 0 ? pool[next++] : 0;
+            }
+        }
+    }
+
+    /**
+     * Chooses numbersPerRow random columns in each row, retrying until every column holds at least one number,
+     * and counts the filled cells per column.
+     */
+    private long randomLayout() {
+        int numbersPerRow = geometry.getNumbersPerRow();
+        while (true) {
+            long layout = 0;
+            long usedColumns = 0;
+            for (int col = 0; col < columns; col++) {
+                perColumn[col] = 0;
+            }
+            for (int row = 0; row < rows; row++) {
+                for (int i = 0; i < numbersPerRow; i++) {
+                    int j = i + random.nextInt(columns - i);
+                    int col = columnOrder[j];
+                    columnOrder[j] = columnOrder[i];
+                    columnOrder[i] = col;
+                    layout |= 1L << (row * columns + col);
+                    usedColumns |= 1L << col;
+                    perColumn[col]++;
+                }
+            }
+            if (Long.bitCount(usedColumns) == columns) return layout;
+        }
+    }
+
+    /**
+     * Generates a random card different from every card issued since the last {@link #clearIssued()}.
+     *
+     * @param out    Receives the card numbers by cell index, 0 for FREE and blank cells.
+     * @param offset The index in out of the card's first cell.
+     * @throws IllegalStateException if no new card turns up, i.e. the geometry has run out of distinct cards.
+     */
+    public void generateUnique(int[] out, int offset) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            generate(out, offset);
+            if (issued.add(fingerprint(out, offset, cells))) return;
+        }
+        throw new IllegalStateException("No new " + geometry + " card after " + MAX_ATTEMPTS + " attempts, "
+                + issued.size() + " issued");
+    }
+
+    /**
+     * Fills a pool with distinct cards, all different from the cards issued before.
+     *
+     * @param out   Receives the card numbers, one per cell by cell index, card after card from index 0.
+     * @param count The number of cards.
+     * @throws IllegalStateException if the geometry runs out of distinct cards.
+     */
+    public void fill(int[] out, int count) {
+        for (int card = 0; card < count; card++) {
+            generateUnique(out, card * cells);
+        }
+    }
+
+    /**
+     * Forgets the issued cards, so later cards may repeat them.
+     */
+    public void clearIssued() {
+        issued.clear();
+    }
+
+    public int getIssuedCount() {
+        return issued.size();
+    }
+
+    public CardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns a 64-bit hash of a card's numbers. Distinct cards collide with negligible probability, and a collision
+     * only makes {@link #generateUnique(int[], int)} draw again.
+     */
+    public static long fingerprint(int[] numbers, int offset, int cells) {
+        long h = cells;
+        for (int i = offset; i < offset + cells; i++) {
+            h = (h ^ numbers[i]) * 0x9E3779B97F4A7C15L;
+        }
+        // MurmurHash3 finalizer, so the low bits depend on every cell
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,238 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.Random;
+
+/**
+ * The shape of a bingo variant: a grid of rows x columns, the ball range, how many numbers each row holds, and
+ * whether the centre is FREE. Cells are indexed as row * columns + col and a card's marks fit in a long, so grids
+ * are limited to 64 cells. Cells holding 0 (the FREE cell, and the blanks of 90-ball tickets) start marked, which
+ * lets the win lines always span whole rows and columns.
+ * <p>
+ * Each column draws its numbers from its own contiguous slice of the ball range, and numbers run top to bottom in
+ * ascending order within a column.
+ */
+public final class CardGeometry {
+    public static final int MAX_CELLS = 64;
+    // Card numbers are stored as one byte per cell
+    public static final int MAX_BALLS = 255;
+
+    /**
+     * Classic 75-ball: 5x5, columns B-I-N-G-O of 15 numbers, FREE centre; rows, columns and diagonals win.
+     */
+    public static final CardGeometry BINGO_75 = new CardGeometry(1, "75-ball", 5, 5, 75, 5, true, true,
+            evenColumns(5, 75));
+
+    /**
+     * UK 90-ball ticket: 3x9, five numbers per row, columns 1-9, 10-19 ... 80-90; a full row wins.
+     */
+    public static final CardGeometry BINGO_90 = new CardGeometry(2, "90-ball", 3, 9, 90, 5, false, false,
+            new int[]{1, 10, 20, 30, 40, 50, 60, 70, 80, 91});
+
+    /**
+     * Speed bingo: 4x4 from 48 balls, no FREE cell; rows, columns and diagonals win.
+     */
+    public static final CardGeometry SPEED_16 = new CardGeometry(3, "Speed", 4, 4, 48, 4, false, true,
+            evenColumns(4, 48));
+
+    private final int id;
+    private final String name;
+    private final int rows;
+    private final int columns;
+    private final int cells;
+    private final int maxNumber;
+    private final int numbersPerRow;
+    private final int freeCell;
+    // columnStart[col] .. columnStart[col + 1] - 1 is the column's number range
+    private final int[] columnStart;
+    private final long[] lines;
+
+    private CardGeometry(int id, String name, int rows, int columns, int maxNumber, int numbersPerRow,
+                         boolean freeCentre, boolean columnAndDiagonalLines, int[] columnStart) {
+        if (rows < 1 || columns < 1 || rows * columns > MAX_CELLS) {
+            throw new IllegalArgumentException("Grid must have 1 to " + MAX_CELLS + " cells: " + rows + "x" + columns);
+        }
+        if (maxNumber < 1 || maxNumber > MAX_BALLS) {
+            throw new IllegalArgumentException("Ball count must be 1 to " + MAX_BALLS + ": " + maxNumber);
+        }
+        if (numbersPerRow < 1 || numbersPerRow > columns) {
+            throw new IllegalArgumentException("Invalid numbers per row: " + numbersPerRow);
+        }
+        for (int col = 0; col < columns; col++) {
+            if (columnStart[col + 1] - columnStart[col] < rows) {
+                throw new IllegalArgumentException("Column " + col + " has fewer numbers than rows");
+            }
+        }
+        this.id = id;
+        this.name = name;
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = rows * columns;
+        this.maxNumber = maxNumber;
+        this.numbersPerRow = numbersPerRow;
+        this.freeCell = freeCentre && rows % 2 == 1 && columns % 2 == 1 ? (rows / 2) * columns + columns / 2 : -1;
+        this.columnStart = columnStart;
+
+        int lineCount = rows;
+        if (columnAndDiagonalLines) lineCount += columns + (rows == columns ? 2 : 0);
+        lines = new long[lineCount];
+        int line = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) lines[line] |= 1L << (row * columns + col);
+            line++;
+        }
+        if (columnAndDiagonalLines) {
+            for (int col = 0; col < columns; col++) {
+                for (int row = 0; row < rows; row++) lines[line] |= 1L << (row * columns + col);
+                line++;
+            }
+            if (rows == columns) {
+                for (int i = 0; i < rows; i++) {
+                    lines[line] |= 1L << (i * columns + i);
+                    lines[line + 1] |= 1L << (i * columns + (columns - 1 - i));
+                }
+            }
+        }
+    }
+
+    /**
+     * A custom full grid: every cell holds a number (except a FREE centre, if asked for and the grid has one), the
+     * balls are split evenly across the columns, and rows, columns and (for square grids) diagonals win.
+     *
+     * @throws IllegalArgumentException if the grid has more than 64 cells or too few balls to fill it.
+     */
+    public static CardGeometry custom(int rows, int columns, int maxNumber, boolean freeCentre) {
+        return new CardGeometry(0, rows + "x" + columns, rows, columns, maxNumber, columns, freeCentre, true,
+                evenColumns(columns, maxNumber));
+    }
+
+    /**
+     * Returns the built-in geometry with the given id, or null.
+     */
+    public static CardGeometry byId(int id) {
+        switch (id) {
+            case 1: return BINGO_75;
+            case 2: return BINGO_90;
+            case 3: return SPEED_16;
+            default: return null;
+        }
+    }
+
+    private static int[] evenColumns(int columns, int maxNumber) {
+        int[] start = new int[columns + 1];
+        for (int col = 0; col <= columns; col++) {
+            start[col] = col * maxNumber / columns + 1;
+        }
+        return start;
+    }
+
+    /**
+     * Generates a random card. Allocates a {@link CardGenerator} per call; use one directly to deal many cards.
+     *
+     * @param random The random source.
+     * @return The card numbers by cell index, 0 for FREE and blank cells.
+     */
+    public int[] generateCard(Random random) {
+        int[] card = new int[cells];
+        new CardGenerator(this, random).generate(card, 0);
+        return card;
+    }
+
+    /**
+     * Returns the column whose range holds the number.
+     */
+    public int columnOf(int number) {
+        for (int col = 0; col < columns; col++) {
+            if (number < columnStart[col + 1]) return col;
+        }
+        return columns - 1;
+    }
+
+    /**
+     * Returns the mask with a bit set for every cell.
+     */
+    public long getAllCells() {
+        return cells == 64 ? -1L : (1L << cells) - 1;
+    }
+
+    public int getLineCount() {
+        return lines.length;
+    }
+
+    public long getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * Returns the geometry's id as stored with saved games; 0 for custom geometries.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+
+    public int getMaxNumber() {
+        return maxNumber;
+    }
+
+    public int getNumbersPerRow() {
+        return numbersPerRow;
+    }
+
+    /**
+     * Returns the lowest number of a column's range; the range ends just below the next column's start, and
+     * getColumnStart(columns) is maxNumber + 1.
+     */
+    int getColumnStart(int col) {
+        return columnStart[col];
+    }
+
+    /**
+     * Returns true when cards leave some cells blank, as 90-ball tickets do; which cells varies from card to card.
+     */
+    public boolean hasBlanks() {
+        return numbersPerRow < columns;
+    }
+
+    /**
+     * Returns whether a winning shape needs calls on every card, and the same number of them. FREE and blank cells
+     * start marked, so a shape on the FREE cell alone, or on a geometry with blanks any shape but whole rows (the
+     * only cells whose count of numbers is fixed), could be complete on some cards before the first call.
+     */
+    public boolean isPlayableShape(long mask) {
+        if (freeCell >= 0 && (mask & ~(1L << freeCell)) == 0) return false;
+        if (!hasBlanks()) return true;
+        long row = (1L << columns) - 1;
+        for (int r = 0; r < rows; r++) {
+            long cellsInRow = mask & row << (r * columns);
+            if (cellsInRow != 0 && cellsInRow != row << (r * columns)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the FREE cell, or -1 if the geometry has none.
+     */
+    public int getFreeCell() {
+        return freeCell;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,367 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.Arrays;
+
+/**
+ * A set of cards of one {@link CardGeometry} played against one draw sequence. Card numbers and marks are held in
+ * flat primitive arrays (marks as one long per card), and an inverted index maps each number to the packed
+ * (card, cell) positions holding it, so applying a called number touches only the cards that contain it.
+ * <p>
+ * Each card keeps a counter of unmarked cells for every mask of the active win patterns (the geometry's lines by
+ * default), and marking a cell decrements only the counters of the masks through it: reaching 0 is a win, and
+ * reaching 1 makes the card "one away" at the mask's last cell. The one-away cells of each card and, for every
+ * number, how many shapes calling it would complete are kept up to date the same way, so near-win queries are O(1).
+ * Cards stop being tracked for near wins once they have won.
+ */
+public class CardSet {
+    private static final int CELL_BITS = 6;
+    private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+
+    private CardGeometry geometry = CardGeometry.BINGO_75;
+    private int cardCount;
+    // numbers[card * cells + cell], 0 for FREE and blank cells
+    private int[] numbers = new int[0];
+    private long[] marks = new long[0];
+    // The index of the pattern each card won with, or -1
+    private int[] winningPattern = new int[0];
+    private int winnerCount;
+    private PatternRegistry patterns = PatternRegistry.STANDARD;
+    private int maskCount = patterns.getMaskCount();
+
+    // remaining[card * maskCount + m]: the unmarked cells left in mask m of the patterns
+    private byte[] remaining = new byte[0];
+    // Per card that has not won: the unmarked cells that would complete a shape, and how many shapes are one away
+    private long[] oneAwayCells = new long[0];
+    private int[] oneAwayCount = new int[0];
+    // winningCalls[n]: the one-away shapes, over cards that have not won, whose last cell holds n
+    private int[] winningCalls = new int[geometry.getMaxNumber() + 1];
+
+    // Inverted index: postings[postingStart[n] .. postingStart[n + 1]) are (card << 6 | cell) for number n
+    private int[] postingStart = new int[geometry.getMaxNumber() + 2];
+    private int[] postings = new int[0];
+    private int[] fillScratch = new int[geometry.getMaxNumber() + 1];
+
+    // Cards that won on the last apply()
+    private int[] newWinners = new int[16];
+    private int newWinnerCount;
+
+    /**
+     * Replaces all cards with cards of the current geometry; see {@link #setCards(CardGeometry, int[], int)}.
+     */
+    public void setCards(int[] cardNumbers, int count) {
+        setCards(geometry, cardNumbers, count);
+    }
+
+    /**
+     * Replaces all cards and rebuilds the inverted index. Every card starts with only its FREE and blank cells
+     * marked. Switching to another geometry also resets the win patterns to that geometry's standard lines.
+     *
+     * @param geometry    The geometry of the cards.
+     * @param cardNumbers The card numbers, one per cell by cell index.
+     * @param count       The number of cards.
+     */
+    public void setCards(CardGeometry geometry, int[] cardNumbers, int count) {
+        if (geometry != this.geometry) {
+            this.geometry = geometry;
+            postingStart = new int[geometry.getMaxNumber() + 2];
+            fillScratch = new int[geometry.getMaxNumber() + 1];
+            winningCalls = new int[geometry.getMaxNumber() + 1];
+        }
+        if (patterns.getGeometry() != geometry) {
+            patterns = PatternRegistry.standard(geometry);
+            maskCount = patterns.getMaskCount();
+        }
+        int cellCount = geometry.getCells();
+        int cells = count * cellCount;
+        if (numbers.length < cells) {
+            numbers = new int[cells];
+        }
+        if (marks.length < count) {
+            marks = new long[count];
+            winningPattern = new int[count];
+            oneAwayCells = new long[count];
+            oneAwayCount = new int[count];
+        }
+        System.arraycopy(cardNumbers, 0, numbers, 0, cells);
+        cardCount = count;
+        buildIndex();
+        for (int card = 0; card < count; card++) {
+            int base = card * cellCount;
+            long mask = 0;
+            for (int cell = 0; cell < cellCount; cell++) {
+                if (numbers[base + cell] == 0) mask |= 1L << cell;
+            }
+            marks[card] = mask;
+        }
+        evaluateAll();
+    }
+
+    private void buildIndex() {
+        int cellCount = geometry.getCells();
+        int cells = cardCount * cellCount;
+        Arrays.fill(postingStart, 0);
+        for (int i = 0; i < cells; i++) {
+            int num = numbers[i];
+            if (num != 0) postingStart[num + 1]++;
+        }
+        for (int n = 1; n < postingStart.length; n++) {
+            postingStart[n] += postingStart[n - 1];
+        }
+        if (postings.length < postingStart[postingStart.length - 1]) {
+            postings = new int[postingStart[postingStart.length - 1]];
+        }
+        int[] fill = fillScratch;
+        Arrays.fill(fill, 0);
+        for (int i = 0; i < cells; i++) {
+            int num = numbers[i];
+            if (num == 0) continue;
+            int card = i / cellCount;
+            int cell = i - card * cellCount;
+            postings[postingStart[num] + fill[num]++] = card << CELL_BITS | cell;
+        }
+    }
+
+    /**
+     * Sets a card's mark state directly (e.g. when loading a saved game) and re-evaluates its win status.
+     */
+    public void setMarks(int card, long markedMask) {
+        int pattern = winningPattern[card];
+        if (pattern < 0) {
+            untrackNearWins(card);
+        }
+        marks[card] = markedMask;
+        evaluate(card);
+        if ((winningPattern[card] >= 0) != (pattern >= 0)) {
+            winnerCount += pattern >= 0 ? -1 : 1;
+        }
+    }
+
+    /**
+     * Replaces the active win patterns and re-evaluates every card against them.
+     *
+     * @throws IllegalArgumentException if the patterns are for another geometry.
+     */
+    public void setPatterns(PatternRegistry patterns) {
+        if (patterns.getGeometry() != geometry) {
+            throw new IllegalArgumentException("Patterns are for " + patterns.getGeometry() + ", cards are " + geometry);
+        }
+        this.patterns = patterns;
+        maskCount = patterns.getMaskCount();
+        evaluateAll();
+    }
+
+    /**
+     * Rebuilds the win status, counters and near wins of every card from its marks.
+     */
+    private void evaluateAll() {
+        if (remaining.length < cardCount * maskCount) {
+            remaining = new byte[cardCount * maskCount];
+        }
+        Arrays.fill(winningCalls, 0);
+        winnerCount = 0;
+        newWinnerCount = 0;
+        for (int card = 0; card < cardCount; card++) {
+            evaluate(card);
+            if (winningPattern[card] >= 0) winnerCount++;
+        }
+    }
+
+    /**
+     * Computes a card's win status, counters and near wins from its marks. Its old near wins must already be
+     * untracked; the winner count is left to the caller.
+     */
+    private void evaluate(int card) {
+        long markedMask = marks[card];
+        int pattern = patterns.match(markedMask);
+        winningPattern[card] = pattern;
+        int base = card * maskCount;
+        long cells = 0;
+        int count = 0;
+        for (int m = 0; m < maskCount; m++) {
+            long missing = patterns.getMask(m) & ~markedMask;
+            int left = Long.bitCount(missing);
+            remaining[base + m] = (byte) left;
+            if (left == 1 && pattern < 0) {
+                cells |= missing;
+                count++;
+                winningCalls[numbers[card * geometry.getCells() + Long.numberOfTrailingZeros(missing)]]++;
+            }
+        }
+        oneAwayCells[card] = cells;
+        oneAwayCount[card] = count;
+    }
+
+    /**
+     * Removes a card that has not won from the near-win totals, e.g. once it wins.
+     */
+    private void untrackNearWins(int card) {
+        if (oneAwayCount[card] == 0) return;
+        int base = card * maskCount;
+        long markedMask = marks[card];
+        for (int m = 0; m < maskCount; m++) {
+            if (remaining[base + m] != 1) continue;
+            long missing = patterns.getMask(m) & ~markedMask;
+            winningCalls[numbers[card * geometry.getCells() + Long.numberOfTrailingZeros(missing)]]--;
+        }
+        oneAwayCells[card] = 0;
+        oneAwayCount[card] = 0;
+    }
+
+    public PatternRegistry getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Marks a called number on every card that holds it.
+     *
+     * @param number The called number.
+     * @return The number of cards that completed their first pattern with this number; see {@link #getNewWinner(int)}.
+     */
+    public int apply(int number) {
+        newWinnerCount = 0;
+        if (number < 1 || number > geometry.getMaxNumber()) return 0;
+        int cellCount = geometry.getCells();
+        for (int p = postingStart[number], end = postingStart[number + 1]; p < end; p++) {
+            int packed = postings[p];
+            int card = packed >>> CELL_BITS;
+            int cell = packed & CELL_MASK;
+            long mask = marks[card] | 1L << cell;
+            if (mask == marks[card]) continue; // Already marked
+            marks[card] = mask;
+            if (winningPattern[card] >= 0) continue;
+
+            // Masks are in pattern order, so the first one completed belongs to the first pattern completed
+            int[] through = patterns.masksThrough(cell);
+            int base = card * maskCount;
+            int pattern = -1;
+            for (int i = 0; i < through.length; i++) {
+                int m = through[i];
+                int left = --remaining[base + m];
+                if (left == 0) {
+                    // It was one away at this cell
+                    oneAwayCount[card]--;
+                    winningCalls[number]--;
+                    if (pattern < 0) pattern = patterns.getMaskPattern(m);
+                } else if (left == 1) {
+                    long missing = patterns.getMask(m) & ~mask;
+                    oneAwayCells[card] |= missing;
+                    oneAwayCount[card]++;
+                    winningCalls[numbers[card * cellCount + Long.numberOfTrailingZeros(missing)]]++;
+                }
+            }
+            oneAwayCells[card] &= ~(1L << cell);
+            if (pattern >= 0) {
+                untrackNearWins(card);
+                winningPattern[card] = pattern;
+                winnerCount++;
+                addNewWinner(card);
+            }
+        }
+        return newWinnerCount;
+    }
+
+    private void addNewWinner(int card) {
+        if (newWinnerCount == newWinners.length) {
+            newWinners = Arrays.copyOf(newWinners, newWinners.length * 2);
+        }
+        newWinners[newWinnerCount++] = card;
+    }
+
+    /**
+     * Returns the start of the postings for a number; iterate up to {@link #postingEnd(int)}.
+     */
+    public int postingStart(int number) {
+        return postingStart[number];
+    }
+
+    public int postingEnd(int number) {
+        return postingStart[number + 1];
+    }
+
+    public int postingCard(int posting) {
+        return postings[posting] >>> CELL_BITS;
+    }
+
+    public int postingCell(int posting) {
+        return postings[posting] & CELL_MASK;
+    }
+
+    public int getNewWinnerCount() {
+        return newWinnerCount;
+    }
+
+    public int getNewWinner(int index) {
+        return newWinners[index];
+    }
+
+    public CardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getCardCount() {
+        return cardCount;
+    }
+
+    public int getNumber(int card, int cell) {
+        return numbers[card * geometry.getCells() + cell];
+    }
+
+    /**
+     * Returns a card's mark state, with bit (row * columns + col) set for a marked cell.
+     */
+    public long getMarks(int card) {
+        return marks[card];
+    }
+
+    public boolean hasWon(int card) {
+        return winningPattern[card] >= 0;
+    }
+
+    /**
+     * Returns the index in {@link #getPatterns()} of the pattern the card won with, or -1 if it has not won.
+     */
+    public int getWinningPattern(int card) {
+        return winningPattern[card];
+    }
+
+    public int getWinnerCount() {
+        return winnerCount;
+    }
+
+    /**
+     * Returns how many pattern shapes (lines, under the standard rules) the card is one number away from completing;
+     * 0 once it has won.
+     */
+    public int getOneAwayCount(int card) {
+        return oneAwayCount[card];
+    }
+
+    /**
+     * Returns the unmarked cells of the card that would complete a shape if called, with bit (row * columns + col)
+     * set for each; 0 once it has won.
+     */
+    public long getOneAwayCells(int card) {
+        return oneAwayCells[card];
+    }
+
+    /**
+     * Returns true if calling the number would complete a shape on some card that has not won yet.
+     */
+    public boolean wouldWin(int number) {
+        return number >= 1 && number < winningCalls.length && winningCalls[number] > 0;
+    }
+
+    /**
+     * Returns how many shapes, over the cards that have not won, calling the number would complete.
+     */
+    public int getWinningCallCount(int number) {
+        return number >= 1 && number < winningCalls.length ? winningCalls[number] : 0;
+    }
+
+    /**
+     * Returns a copy of all card numbers, one per cell.
+     */
+    public int[] copyNumbers() {
+        return Arrays.copyOf(numbers, cardCount * geometry.getCells());
+    }
+}
@@ -0,0 +1,93 @@
+package ict.mgame.bingogame.engine;
+
+/**
+ * Passive coin income computed from timestamps instead of a ticking timer.
+ * One coin is earned per full interval since the last accrual; the balance is derived on read and only
+ * materialized (folded into the stored coins) when coins are spent or the caller persists it.
+ * Income stops after the accrual window: time away beyond it earns nothing, so a long absence pays at most one
+ * window's worth of coins.
+ */
+public class CoinAccrual {
+    private final long intervalMs;
+    private final long maxAccrualMs;
+    private int storedCoins;
+    private long lastAccrualAt;
+
+    /**
+     * @param storedCoins   The coins already persisted.
+     * @param lastAccrualAt The time (ms since epoch) up to which passive income is included in storedCoins.
+     * @param intervalMs    The time it takes to earn one coin.
+     * @param maxAccrualMs  The longest stretch since the last accrual that earns coins.
+     */
+    public CoinAccrual(int storedCoins, long lastAccrualAt, long intervalMs, long maxAccrualMs) {
+        this.storedCoins = storedCoins;
+        this.lastAccrualAt = lastAccrualAt;
+        this.intervalMs = intervalMs;
+        this.maxAccrualMs = maxAccrualMs;
+    }
+
+    /**
+     * Income with no accrual window, for callers that model the economy without absences.
+     */
+    public CoinAccrual(int storedCoins, long lastAccrualAt, long intervalMs) {
+        this(storedCoins, lastAccrualAt, intervalMs, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of whole coins earned since the last accrual.
+     */
+    public int pending(long now) {
+        if (now <= lastAccrualAt) return 0;
+        long earned = Math.min(now - lastAccrualAt, maxAccrualMs) / intervalMs;
+        return earned > Integer.MAX_VALUE - storedCoins ? Integer.MAX_VALUE - storedCoins : (int) earned;
+    }
+
+    /**
+     * Returns the balance including coins earned but not yet materialized.
+     */
+    public int balance(long now) {
+        return storedCoins + pending(now);
+    }
+
+    /**
+     * Returns the time left until the next coin is earned; a full interval once the accrual window is used up, as
+     * the next coin then starts after the earned ones are materialized.
+     */
+    public long msUntilNext(long now) {
+        if (now < lastAccrualAt || now - lastAccrualAt >= maxAccrualMs) return intervalMs;
+        return intervalMs - (now - lastAccrualAt) % intervalMs;
+    }
+
+    /**
+     * Folds earned coins into the stored balance. The partial interval carries over, so no time is lost within the
+     * accrual window; time past the window is dropped.
+     *
+     * @return The number of coins materialized.
+     */
+    public int materialize(long now) {
+        int earned = pending(now);
+        if (earned > 0) {
+            storedCoins += earned;
+            lastAccrualAt += earned * intervalMs;
+        }
+        if (now - lastAccrualAt >= maxAccrualMs) {
+            lastAccrualAt = now - (now - lastAccrualAt) % intervalMs;
+        }
+        return earned;
+    }
+
+    /**
+     * Adds (or, with a negative amount, removes) coins from the stored balance.
+     */
+    public void add(int amount) {
+        storedCoins += amount;
+    }
+
+    public int getStoredCoins() {
+        return storedCoins;
+    }
+
+    public long getLastAccrualAt() {
+        return lastAccrualAt;
+    }
+}
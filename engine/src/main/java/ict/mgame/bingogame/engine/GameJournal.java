@@ -0,0 +1,210 @@
+package ict.mgame.bingogame.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of game events in one memory-mapped segment file. Every event is a fixed-size binary record
+ * with a sequence number and a CRC32, written straight into the mapping, so an append is a few stores into memory
+ * and survives the process being killed as soon as it returns. A record torn by a kill mid-append fails its checksum
+ * and ends the journal there, so at most the in-flight event is lost. Durability across power loss needs
+ * {@link #force()}.
+ * <p>
+ * The segment starts with a header holding the sequence number of its first record; records follow in sequence
+ * order. Once everything in the journal has been checkpointed elsewhere, {@link #reset()} starts the segment over.
+ * Records left over from before a reset have lower sequence numbers than the new ones, so they can never continue
+ * the new chain. Not thread-safe; callers serialize appends, resets and replays.
+ */
+public class GameJournal implements Closeable {
+    public static final int RECORD_SIZE = 32;
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x424A4E4C; // "BJNL"
+
+    // Record layout
+    private static final int SEQ = 0;
+    private static final int TYPE = 4;
+    private static final int USER = 8;
+    private static final int A = 12;
+    private static final int B = 16;
+    private static final int C = 24;
+    private static final int CRC = 28;
+
+    /**
+     * Receives the records of {@link #replay(int, Visitor)}.
+     */
+    public interface Visitor {
+        void record(int seq, int type, int userId, int a, long b, int c);
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final CRC32 crc = new CRC32();
+    // The record being written, checksummed before it is copied into the mapping
+    private final byte[] scratch = new byte[RECORD_SIZE];
+
+    private int baseSeq;
+    private int count;
+
+    /**
+     * Opens or creates a journal and finds its end.
+     *
+     * @param path       The segment file.
+     * @param capacity   The number of records the segment holds.
+     * @param checkpoint The last sequence number already committed elsewhere; a new or unreadable segment starts
+     *                   numbering after it.
+     */
+    public GameJournal(File path, int capacity, int checkpoint) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid journal capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        file = new RandomAccessFile(path, "rw");
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (file.length() < size) {
+            file.setLength(size);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (readHeader()) {
+            // Follow the chain of valid records with consecutive sequence numbers
+            while (count < capacity && isValid(count, baseSeq + count)) {
+                count++;
+            }
+            // Records of this segment past a torn one were written before it was lost. Once the next append fills
+            // the gap they would continue the chain, so they are numbered out of it.
+            for (int i = count + 1; i < capacity; i++) {
+                int offset = offset(i);
+                if (buffer.getInt(offset + SEQ) >= baseSeq + count) {
+                    buffer.putInt(offset + SEQ, baseSeq - 1);
+                }
+            }
+        } else {
+            writeHeader(checkpoint + 1);
+        }
+    }
+
+    /**
+     * Appends one record.
+     *
+     * @return The record's sequence number, or -1 if the segment is full.
+     */
+    public int append(int type, int userId, int a, long b, int c) {
+        if (count == capacity) return -1;
+        int seq = baseSeq + count;
+        putInt(scratch, SEQ, seq);
+        putInt(scratch, TYPE, type);
+        putInt(scratch, USER, userId);
+        putInt(scratch, A, a);
+        putInt(scratch, B, (int) (b >>> 32));
+        putInt(scratch, B + 4, (int) b);
+        putInt(scratch, C, c);
+        crc.reset();
+        crc.update(scratch, 0, CRC);
+        putInt(scratch, CRC, (int) crc.getValue());
+        buffer.position(offset(count));
+        buffer.put(scratch);
+        count++;
+        return seq;
+    }
+
+    /**
+     * Visits, in order, every record with a sequence number after the given one.
+     */
+    public void replay(int afterSeq, Visitor visitor) {
+        for (int i = 0; i < count; i++) {
+            int offset = offset(i);
+            int seq = buffer.getInt(offset + SEQ);
+            if (seq <= afterSeq) continue;
+            visitor.record(seq, buffer.getInt(offset + TYPE), buffer.getInt(offset + USER), buffer.getInt(offset + A),
+                    buffer.getLong(offset + B), buffer.getInt(offset + C));
+        }
+    }
+
+    /**
+     * Starts the segment over, numbering on from the last record. Only call once every record is checkpointed.
+     */
+    public void reset() {
+        writeHeader(baseSeq + count);
+    }
+
+    /**
+     * Writes the mapping through to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Returns the sequence number of the last record, or the one before the first if the segment is empty.
+     */
+    public int getLastSeq() {
+        return baseSeq + count - 1;
+    }
+
+    /**
+     * Returns the number of records in the segment.
+     */
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private boolean readHeader() {
+        if (buffer.getInt(0) != MAGIC) return false;
+        crc.reset();
+        for (int i = 0; i < 8; i++) {
+            crc.update(buffer.get(i));
+        }
+        if (buffer.getInt(8) != (int) crc.getValue()) return false;
+        baseSeq = buffer.getInt(4);
+        count = 0;
+        return true;
+    }
+
+    private void writeHeader(int firstSeq) {
+        putInt(scratch, 0, MAGIC);
+        putInt(scratch, 4, firstSeq);
+        crc.reset();
+        crc.update(scratch, 0, 8);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, firstSeq);
+        buffer.putInt(8, (int) crc.getValue());
+        baseSeq = firstSeq;
+        count = 0;
+    }
+
+    private boolean isValid(int index, int expectedSeq) {
+        int offset = offset(index);
+        if (buffer.getInt(offset + SEQ) != expectedSeq) return false;
+        crc.reset();
+        for (int i = 0; i < CRC; i++) {
+            crc.update(buffer.get(offset + i));
+        }
+        return buffer.getInt(offset + CRC) == (int) crc.getValue();
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
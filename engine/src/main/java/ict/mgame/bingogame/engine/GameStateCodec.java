@@ -0,0 +1,228 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodings of a saved 75-ball game: the 5x5 card, the drawn numbers in call order and the marked cells.
+ * <p>
+ * The binary format (version 1) is laid out as:
+ * <pre>
+ *   [0]            format version
+ *   [1..25]        card numbers by cell index, 0 for FREE
+ *   [26]           draw count n
+ *   [27..27+n)     drawn numbers in call order
+ *   [27+n..31+n)   25-bit mark mask, big-endian
+ * </pre>
+ * The called set is not stored separately since it is exactly the numbers in the call order.
+ * The comma-separated text helpers are kept for reading rows written before database version 5.
+ */
+public final class GameStateCodec {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 1 + BingoEngine.CELLS + 1;
+    private static final int MASK_SIZE = 4;
+
+    private GameStateCodec() {
+    }
+
+    /**
+     * Encodes the engine's current game in the binary format.
+     *
+     * @param engine The engine to encode; must be playing a 75-ball game.
+     * @return The encoded state, at most 106 bytes.
+     */
+    public static byte[] encode(BingoEngine engine) {
+        int drawCount = engine.getDrawCount();
+        byte[] out = new byte[HEADER_SIZE + drawCount + MASK_SIZE];
+        out[0] = FORMAT_VERSION;
+        for (int cell = 0; cell < BingoEngine.CELLS; cell++) {
+            out[1 + cell] = (byte) engine.getNumber(cell);
+        }
+        out[HEADER_SIZE - 1] = (byte) drawCount;
+        for (int i = 0; i < drawCount; i++) {
+            out[HEADER_SIZE + i] = (byte) engine.getDrawnNumber(i);
+        }
+        putMask(out, HEADER_SIZE + drawCount, (int) engine.getMarkedMask());
+        return out;
+    }
+
+    /**
+     * Encodes a game held in the array form used by DatabaseHelper.GameState.
+     *
+     * @param card   The 5x5 card numbers.
+     * @param drawn  The drawn numbers in call order.
+     * @param marked The 5x5 marked cells.
+     * @return The encoded state.
+     */
+    public static byte[] encode(int[][] card, List<Integer> drawn, boolean[][] marked) {
+        int drawCount = drawn.size();
+        byte[] out = new byte[HEADER_SIZE + drawCount + MASK_SIZE];
+        out[0] = FORMAT_VERSION;
+        int mask = 0;
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                out[1 + row * 5 + col] = (byte) card[row][col];
+                if (marked[row][col]) mask |= 1 << (row * 5 + col);
+            }
+        }
+        out[HEADER_SIZE - 1] = (byte) drawCount;
+        for (int i = 0; i < drawCount; i++) {
+            out[HEADER_SIZE + i] = (byte) (int) drawn.get(i);
+        }
+        putMask(out, HEADER_SIZE + drawCount, mask);
+        return out;
+    }
+
+    /**
+     * Checks that a blob is a complete state in a supported format version.
+     */
+    public static boolean isValid(byte[] blob) {
+        if (blob == null || blob.length < HEADER_SIZE + MASK_SIZE || blob[0] != FORMAT_VERSION) return false;
+        int drawCount = blob[HEADER_SIZE - 1] & 0xFF;
+        return drawCount <= BingoEngine.MAX_NUMBER && blob.length == HEADER_SIZE + drawCount + MASK_SIZE;
+    }
+
+    /**
+     * Loads a binary state into the engine: card, marks and call order.
+     *
+     * @param blob   The encoded state.
+     * @param engine The engine to load into.
+     * @return False if the blob is not a valid state, in which case the engine is unchanged.
+     */
+    public static boolean decode(byte[] blob, BingoEngine engine) {
+        if (!isValid(blob)) return false;
+        int[] numbers = new int[BingoEngine.CELLS];
+        for (int cell = 0; cell < BingoEngine.CELLS; cell++) {
+            numbers[cell] = blob[1 + cell] & 0xFF;
+        }
+        engine.setCards(CardGeometry.BINGO_75, numbers, 1);
+        CardSet cards = engine.getCards();
+        cards.setMarks(0, cards.getMarks(0) | decodeMarkedMask(blob) & 0xFFFFFFFFL);
+        engine.restoreDrawnNumbers(decodeDrawn(blob));
+        return true;
+    }
+
+    public static int[][] decodeCard(byte[] blob) {
+        int[][] card = new int[5][5];
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                card[row][col] = blob[1 + row * 5 + col] & 0xFF;
+            }
+        }
+        return card;
+    }
+
+    public static List<Integer> decodeDrawn(byte[] blob) {
+        int drawCount = blob[HEADER_SIZE - 1] & 0xFF;
+        List<Integer> drawn = new ArrayList<>(drawCount);
+        for (int i = 0; i < drawCount; i++) {
+            drawn.add(blob[HEADER_SIZE + i] & 0xFF);
+        }
+        return drawn;
+    }
+
+    public static boolean[][] decodeMarked(byte[] blob) {
+        int mask = decodeMarkedMask(blob);
+        boolean[][] marked = new boolean[5][5];
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                marked[row][col] = (mask & (1 << (row * 5 + col))) != 0;
+            }
+        }
+        return marked;
+    }
+
+    public static int decodeMarkedMask(byte[] blob) {
+        int offset = HEADER_SIZE + (blob[HEADER_SIZE - 1] & 0xFF);
+        return (blob[offset] & 0xFF) << 24
+                | (blob[offset + 1] & 0xFF) << 16
+                | (blob[offset + 2] & 0xFF) << 8
+                | (blob[offset + 3] & 0xFF);
+    }
+
+    private static void putMask(byte[] out, int offset, int mask) {
+        out[offset] = (byte) (mask >>> 24);
+        out[offset + 1] = (byte) (mask >>> 16);
+        out[offset + 2] = (byte) (mask >>> 8);
+        out[offset + 3] = (byte) mask;
+    }
+
+    public static String serializeCard(int[][] card) {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                if (sb.length() > 0) sb.append(",");
+                sb.append(card[row][col]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a serialized card.
+     *
+     * @param str The comma-separated card numbers.
+     * @return The 5x5 card, or null if the string is empty or malformed.
+     */
+    public static int[][] deserializeCard(String str) {
+        if (str.isEmpty()) return null;
+        String[] parts = str.split(",");
+        if (parts.length != 25) return null; // Invalid
+        int[][] card = new int[5][5];
+        try {
+            int index = 0;
+            for (int row = 0; row < 5; row++) {
+                for (int col = 0; col < 5; col++) {
+                    card[row][col] = Integer.parseInt(parts[index++]);
+                }
+            }
+            return card;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static String serializeList(List<Integer> list) {
+        StringBuilder sb = new StringBuilder();
+        for (int num : list) {
+            if (sb.length() > 0) sb.append(",");
+            sb.append(num);
+        }
+        return sb.toString();
+    }
+
+    public static List<Integer> deserializeList(String str) {
+        List<Integer> list = new ArrayList<>();
+        if (str.isEmpty()) return list;
+        String[] parts = str.split(",");
+        for (String part : parts) {
+            list.add(Integer.parseInt(part));
+        }
+        return list;
+    }
+
+    public static String serializeMarked(boolean[][] marked) {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                if (sb.length() > 0) sb.append(",");
+                sb.append(marked[row][col] ? "1" : "0");
+            }
+        }
+        return sb.toString();
+    }
+
+    public static boolean[][] deserializeMarked(String str) {
+        if (str.isEmpty()) return new boolean[5][5];
+        String[] parts = str.split(",");
+        boolean[][] marked = new boolean[5][5];
+        int index = 0;
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                marked[row][col] = "1".equals(parts[index++]);
+            }
+        }
+        return marked;
+    }
+}
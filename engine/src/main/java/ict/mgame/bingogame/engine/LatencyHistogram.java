@@ -0,0 +1,90 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.Arrays;
+
+/**
+ * Counts of non-negative values, typically nanosecond latencies, in log-linear buckets: every power of two is split
+ * into 16 equal buckets, so any recorded value is known to within 1/16 (about 6%) across the whole long range, in a
+ * fixed 960 counters. Recording is a few shifts and an increment with no allocation. Not thread-safe; give each
+ * recording thread its own histogram and {@link #merge(LatencyHistogram)} them.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long sum;
+    private long max;
+
+    /**
+     * Counts one value; negative values count as 0.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[bucketOf(value)]++;
+        total++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * Adds another histogram into this one.
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile (0-100): the highest value of the bucket holding it, or the
+     * largest value recorded if that is lower. Returns 0 when the histogram is empty.
+     */
+    public long getPercentile(double percentile) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i + 1 < BUCKETS ? Math.min(max, lowestValue(i + 1) - 1) : max;
+        }
+        return max;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+}
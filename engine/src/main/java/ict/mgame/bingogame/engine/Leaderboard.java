@@ -0,0 +1,213 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranks players by wins without scanning them. A Fenwick tree over the number of players at each win count answers
+ * "how many players have more wins" in O(log maxWins), and the best players are kept in a short sorted list that is
+ * updated as wins change. Players with equal wins share a rank; within a tie the top list is ordered by name, the same
+ * order as the database's leaderboard index. Not thread-safe.
+ */
+public class Leaderboard {
+    private final int topSize;
+
+    // Players per win count, and the Fenwick tree over it: tree[i] sums counts (i - (i & -i), i] at win count i - 1
+    private int[] counts = new int[64];
+    private int[] tree = new int[65];
+    private int playerCount;
+
+    // Best first, at most topSize entries
+    private final List<Entry> top = new ArrayList<>();
+    private boolean topComplete = true;
+
+    /**
+     * A player and their wins.
+     */
+    public static final class Entry {
+        public final String name;
+        public final int wins;
+
+        public Entry(String name, int wins) {
+            this.name = name;
+            this.wins = wins;
+        }
+
+        /**
+         * Returns whether this entry is listed before the other: more wins, then name.
+         */
+        boolean isAbove(String otherName, int otherWins) {
+            return wins != otherWins ? wins > otherWins : name.compareTo(otherName) < 0;
+        }
+    }
+
+    /**
+     * @param topSize The number of players kept in the top list.
+     */
+    public Leaderboard(int topSize) {
+        if (topSize < 1) {
+            throw new IllegalArgumentException("Invalid top size: " + topSize);
+        }
+        this.topSize = topSize;
+    }
+
+    /**
+     * Counts players without naming them, for loading the win counts of every player; the top list is set separately
+     * with {@link #setTop(List)}.
+     *
+     * @param wins    The players' wins.
+     * @param players The number of players with those wins.
+     */
+    public void addPlayers(int wins, int players) {
+        add(wins, players);
+    }
+
+    /**
+     * Adds a new player, who enters the top list if they rank high enough.
+     */
+    public void addPlayer(String name, int wins) {
+        add(wins, 1);
+        offer(name, wins);
+    }
+
+    /**
+     * Replaces the top list, which must hold the best players in leaderboard order; fewer than the top size means
+     * there are no other players.
+     */
+    public void setTop(List<Entry> entries) {
+        top.clear();
+        top.addAll(entries.size() > topSize ? entries.subList(0, topSize) : entries);
+        topComplete = true;
+    }
+
+    /**
+     * Moves a player from one win count to another.
+     *
+     * @param name     The player.
+     * @param oldWins  Their wins before the change.
+     * @param newWins  Their wins after it.
+     */
+    public void changeWins(String name, int oldWins, int newWins) {
+        if (oldWins == newWins) return;
+        add(oldWins, -1);
+        add(newWins, 1);
+        for (int i = 0; i < top.size(); i++) {
+            if (top.get(i).name.equals(name)) {
+                top.remove(i);
+                int at = insertionPoint(name, newWins);
+                // A player who drops to the end of the list may now rank below someone who is not in it
+                if (newWins < oldWins && at == top.size() && playerCount > top.size() + 1) {
+                    topComplete = false;
+                }
+                top.add(at, new Entry(name, newWins));
+                return;
+            }
+        }
+        offer(name, newWins);
+    }
+
+    /**
+     * Returns the rank of a player with the given wins: one more than the number of players with more wins.
+     */
+    public int rankOf(int wins) {
+        return countAbove(wins) + 1;
+    }
+
+    /**
+     * Returns the number of players with more than the given wins.
+     */
+    public int countAbove(int wins) {
+        if (wins < 0) return playerCount;
+        int i = Math.min(wins + 1, counts.length);
+        int atOrBelow = 0;
+        for (; i > 0; i -= i & -i) {
+            atOrBelow += tree[i];
+        }
+        return playerCount - atOrBelow;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    /**
+     * Returns a copy of the top list, best first.
+     */
+    public List<Entry> getTop() {
+        return new ArrayList<>(top);
+    }
+
+    /**
+     * Returns false once a top player has lost wins and someone outside the list may belong in it; the list must then
+     * be reloaded with {@link #setTop(List)}.
+     */
+    public boolean isTopComplete() {
+        return topComplete;
+    }
+
+    private void add(int wins, int players) {
+        if (wins < 0) {
+            throw new IllegalArgumentException("Invalid wins: " + wins);
+        }
+        if (wins >= counts.length) {
+            grow(wins);
+        }
+        counts[wins] += players;
+        for (int i = wins + 1; i < tree.length; i += i & -i) {
+            tree[i] += players;
+        }
+        playerCount += players;
+    }
+
+    /**
+     * Makes room for the win count and rebuilds the tree in linear time; a Fenwick tree cannot simply be extended
+     * because the new nodes cover old counts.
+     */
+    private void grow(int wins) {
+        int length = counts.length;
+        while (length <= wins) {
+            length *= 2;
+        }
+        counts = Arrays.copyOf(counts, length);
+        tree = new int[length + 1];
+        for (int i = 1; i <= length; i++) {
+            tree[i] += counts[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Inserts the player into the top list if they belong in it, dropping the last entry when it overflows.
+     */
+    private void offer(String name, int wins) {
+        int at = insertionPoint(name, wins);
+        // Past the end of a full list, or of a shorter list that no longer holds everyone, the player's place is unknown
+        if (at == top.size() && (top.size() >= topSize || !topComplete || playerCount > top.size() + 1)) return;
+        top.add(at, new Entry(name, wins));
+        if (top.size() > topSize) {
+            top.remove(top.size() - 1);
+        }
+    }
+
+    private int insertionPoint(String name, int wins) {
+        int low = 0;
+        int high = top.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (top.get(mid).isAbove(name, wins)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
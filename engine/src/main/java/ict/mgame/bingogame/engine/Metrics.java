@@ -0,0 +1,208 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide latency timers and counters for the hot paths, registered once as static fields and recorded into
+ * with no allocation. Off by default: while off, {@link #start()} returns 0 and {@link Timer#stop(long)} and
+ * {@link Counter#increment()} return after one branch, so instrumented code costs next to nothing.
+ * <pre>
+ * private static final Metrics.Timer DRAW = Metrics.timer("engine.draw");
+ *
+ * long start = Metrics.start();
+ * try {
+ *     ...
+ * } finally {
+ *     DRAW.stop(start);
+ * }
+ * </pre>
+ */
+public final class Metrics {
+    private static volatile boolean enabled;
+
+    // Guarded by itself; in registration order
+    private static final List<Timer> timers = new ArrayList<>();
+    private static final List<Counter> counters = new ArrayList<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Durations of one operation, in nanoseconds. Thread-safe.
+     */
+    public static final class Timer {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records the time since a {@link Metrics#start()}; does nothing for a start taken while metrics were off.
+         */
+        public void stop(long start) {
+            if (start == 0) return;
+            long elapsed = System.nanoTime() - start;
+            synchronized (histogram) {
+                histogram.record(elapsed);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            synchronized (histogram) {
+                return histogram.getCount();
+            }
+        }
+
+        /**
+         * Returns an upper bound for the given percentile (0-100) in nanoseconds; see
+         * {@link LatencyHistogram#getPercentile(double)}.
+         */
+        public long getPercentile(double percentile) {
+            synchronized (histogram) {
+                return histogram.getPercentile(percentile);
+            }
+        }
+
+        public long getMax() {
+            synchronized (histogram) {
+                return histogram.getMax();
+            }
+        }
+
+        private void clear() {
+            synchronized (histogram) {
+                histogram.clear();
+            }
+        }
+    }
+
+    /**
+     * A running count of events. Thread-safe.
+     */
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (enabled) count.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            if (enabled) count.addAndGet(delta);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long get() {
+            return count.get();
+        }
+    }
+
+    /**
+     * Returns the timer with the given name, registering it on first use.
+     */
+    public static Timer timer(String name) {
+        synchronized (timers) {
+            for (Timer timer : timers) {
+                if (timer.name.equals(name)) return timer;
+            }
+            Timer timer = new Timer(name);
+            timers.add(timer);
+            return timer;
+        }
+    }
+
+    /**
+     * Returns the counter with the given name, registering it on first use.
+     */
+    public static Counter counter(String name) {
+        synchronized (counters) {
+            for (Counter counter : counters) {
+                if (counter.name.equals(name)) return counter;
+            }
+            Counter counter = new Counter(name);
+            counters.add(counter);
+            return counter;
+        }
+    }
+
+    /**
+     * Returns the start of a timed operation, or 0 when metrics are off.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Clears every timer and counter.
+     */
+    public static void reset() {
+        synchronized (timers) {
+            for (Timer timer : timers) {
+                timer.clear();
+            }
+        }
+        synchronized (counters) {
+            for (Counter counter : counters) {
+                counter.count.set(0);
+            }
+        }
+    }
+
+    /**
+     * Returns a table of every timer that has recorded anything, with its count and p50, p99 and max in
+     * microseconds, followed by every non-zero counter.
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "%-28s %8s %9s %9s %9s%n", "timer", "count", "p50 us", "p99 us", "max us"));
+        synchronized (timers) {
+            for (Timer timer : timers) {
+                long count;
+                long p50;
+                long p99;
+                long max;
+                synchronized (timer.histogram) {
+                    count = timer.histogram.getCount();
+                    p50 = timer.histogram.getPercentile(50);
+                    p99 = timer.histogram.getPercentile(99);
+                    max = timer.histogram.getMax();
+                }
+                if (count == 0) continue;
+                out.append(String.format(Locale.US, "%-28s %8d %9.1f %9.1f %9.1f%n", timer.name, count,
+                        p50 / 1e3, p99 / 1e3, max / 1e3));
+            }
+        }
+        synchronized (counters) {
+            for (Counter counter : counters) {
+                long value = counter.get();
+                if (value == 0) continue;
+                out.append(String.format(Locale.US, "%-28s %8d%n", counter.name, value));
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,190 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, ordered set of active {@link WinPattern}s for one {@link CardGeometry}, compiled into flat mask
+ * arrays. Every active pattern is checked in one pass over the masks, and a per-cell copy holds only the masks
+ * through each cell, so the check after marking one cell skips shapes it cannot complete. When several patterns
+ * are complete, the one registered first is reported. Shapes that some cards could complete without a call are
+ * refused; see {@link CardGeometry#isPlayableShape(long)}.
+ */
+public class PatternRegistry {
+    /**
+     * Rows, columns and diagonals of a 75-ball card only: the classic rules.
+     */
+    public static final PatternRegistry STANDARD = new PatternRegistry(CardGeometry.BINGO_75, true,
+            WinPattern.line(CardGeometry.BINGO_75));
+
+    private final CardGeometry geometry;
+    private final boolean standard;
+    private final WinPattern[] patterns;
+    // masks[i] belongs to patterns[maskPattern[i]]; masks are in pattern order
+    private final long[] masks;
+    private final int[] maskPattern;
+    // The same, restricted to the masks that include each cell, with their indexes into masks
+    private final long[][] masksByCell;
+    private final int[][] maskPatternByCell;
+    private final int[][] maskIndexByCell;
+
+    public PatternRegistry(CardGeometry geometry, WinPattern... patterns) {
+        this(geometry, false, patterns);
+    }
+
+    private PatternRegistry(CardGeometry geometry, boolean standard, WinPattern... patterns) {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("No win patterns");
+        }
+        this.geometry = geometry;
+        this.standard = standard;
+        this.patterns = patterns.clone();
+        int total = 0;
+        for (WinPattern pattern : patterns) {
+            total += pattern.getMaskCount();
+        }
+        masks = new long[total];
+        maskPattern = new int[total];
+        int next = 0;
+        for (int p = 0; p < patterns.length; p++) {
+            for (int m = 0; m < patterns[p].getMaskCount(); m++) {
+                long mask = patterns[p].getMask(m);
+                if ((mask & ~geometry.getAllCells()) != 0) {
+                    throw new IllegalArgumentException("Pattern " + patterns[p].getName() + " does not fit " + geometry);
+                }
+                if (!geometry.isPlayableShape(mask)) {
+                    throw new IllegalArgumentException("Pattern " + patterns[p].getName()
+                            + " can be complete before any call on " + geometry);
+                }
+                masks[next] = mask;
+                maskPattern[next++] = p;
+            }
+        }
+        int cells = geometry.getCells();
+        masksByCell = new long[cells][];
+        maskPatternByCell = new int[cells][];
+        maskIndexByCell = new int[cells][];
+        for (int cell = 0; cell < cells; cell++) {
+            int count = 0;
+            for (long mask : masks) {
+                if ((mask & (1L << cell)) != 0) count++;
+            }
+            long[] cellMasks = new long[count];
+            int[] cellPatterns = new int[count];
+            int[] cellIndexes = new int[count];
+            count = 0;
+            for (int i = 0; i < masks.length; i++) {
+                if ((masks[i] & (1L << cell)) != 0) {
+                    cellMasks[count] = masks[i];
+                    cellPatterns[count] = maskPattern[i];
+                    cellIndexes[count++] = i;
+                }
+            }
+            masksByCell[cell] = cellMasks;
+            maskPatternByCell[cell] = cellPatterns;
+            maskIndexByCell[cell] = cellIndexes;
+        }
+    }
+
+    /**
+     * Returns the classic rules for a geometry: any of its win lines.
+     */
+    public static PatternRegistry standard(CardGeometry geometry) {
+        if (geometry == CardGeometry.BINGO_75) return STANDARD;
+        return new PatternRegistry(geometry, true, WinPattern.line(geometry));
+    }
+
+    /**
+     * Parses a list of patterns, one per line: either a built-in name ("Line", "Four Corners", "X",
+     * "Postage Stamp", "Blackout") or "Name = shape" in the form read by
+     * {@link WinPattern#parse(CardGeometry, String, String)}. Blank lines and lines starting with '#' are skipped.
+     *
+     * @throws IllegalArgumentException if a line is not a known pattern or a valid shape for the geometry.
+     */
+    public static PatternRegistry parse(CardGeometry geometry, String spec) {
+        List<WinPattern> parsed = new ArrayList<>();
+        for (String line : spec.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int equals = line.indexOf('=');
+            if (equals >= 0) {
+                parsed.add(WinPattern.parse(geometry, line.substring(0, equals).trim(), line.substring(equals + 1)));
+            } else {
+                WinPattern pattern = WinPattern.builtIn(geometry, line);
+                if (pattern == null) {
+                    throw new IllegalArgumentException("Unknown win pattern: " + line);
+                }
+                parsed.add(pattern);
+            }
+        }
+        return new PatternRegistry(geometry, parsed.toArray(new WinPattern[0]));
+    }
+
+    /**
+     * Returns the index of the first pattern completed by the mark state, or -1 if none is.
+     */
+    public int match(long markedMask) {
+        for (int i = 0; i < masks.length; i++) {
+            long mask = masks[i];
+            if ((markedMask & mask) == mask) return maskPattern[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Like {@link #match(long)}, but only checks the patterns through the given cell. Enough to detect a win right
+     * after marking that cell.
+     */
+    public int matchThrough(long markedMask, int cell) {
+        long[] cellMasks = masksByCell[cell];
+        for (int i = 0; i < cellMasks.length; i++) {
+            long mask = cellMasks[i];
+            if ((markedMask & mask) == mask) return maskPatternByCell[cell][i];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of compiled masks over all patterns; a pattern with alternative shapes has one per shape.
+     */
+    public int getMaskCount() {
+        return masks.length;
+    }
+
+    public long getMask(int index) {
+        return masks[index];
+    }
+
+    /**
+     * Returns the index of the pattern a mask belongs to.
+     */
+    public int getMaskPattern(int index) {
+        return maskPattern[index];
+    }
+
+    /**
+     * Returns the indexes of the masks that include a cell, in ascending order. The array is shared; do not modify it.
+     */
+    int[] masksThrough(int cell) {
+        return maskIndexByCell[cell];
+    }
+
+    public CardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns true for the classic line rules from {@link #standard(CardGeometry)}.
+     */
+    public boolean isStandard() {
+        return standard;
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    public WinPattern get(int index) {
+        return patterns[index];
+    }
+}
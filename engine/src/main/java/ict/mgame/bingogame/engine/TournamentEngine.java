@@ -0,0 +1,277 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * One draw sequence played against a very large number of classic 75-ball cards (a tournament). Cards are held as flat primitive
+ * arrays rather than one object per card; a card's whole play state (a hit counter for each of its 12 lines, its marks
+ * and whether it has won) is packed into one long, so marking a cell is a single add. The cards are split
+ * into contiguous partitions, each with its own inverted index from number to (card, cell) postings, so a call can be
+ * applied to the partitions independently on several threads. After each call the engine reports exactly the cards
+ * that completed their first line with it, in ascending card order.
+ */
+public class TournamentEngine {
+    private static final int LINES = CardGeometry.BINGO_75.getLineCount();
+    private static final int CELL_BITS = 5;
+    private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+    // Bounded by the flat number array; card << 5 still fits in an int read back with >>>
+    public static final int MAX_CARDS = Integer.MAX_VALUE / BingoEngine.CELLS;
+
+    // Card state layout: bits 0-35 are 12 line counters of 3 bits, each starting at 2 so a full line (5 hits)
+    // reads 0b111; bits 36-60 are the marks by cell; the sign bit is set once the card has won
+    private static final int COUNTER_BITS = 3;
+    private static final int MARKS_SHIFT = LINES * COUNTER_BITS;
+    private static final long WON_BIT = Long.MIN_VALUE;
+    private static final long EMPTY_STATE;
+    // The lowest bit of every line counter
+    private static final long COUNTER_LOW_BITS;
+    // For each cell, what marking it adds: its mark bit and one on the counter of every line passing through it
+    private static final long[] MARK_BY_CELL = new long[BingoEngine.CELLS];
+
+    static {
+        long empty = 0, low = 0;
+        for (int line = 0; line < LINES; line++) {
+            empty |= 2L << (line * COUNTER_BITS);
+            low |= 1L << (line * COUNTER_BITS);
+        }
+        EMPTY_STATE = empty;
+        COUNTER_LOW_BITS = low;
+        for (int cell = 0; cell < BingoEngine.CELLS; cell++) {
+            long mark = 1L << (MARKS_SHIFT + cell);
+            for (int line = 0; line < LINES; line++) {
+                if ((CardGeometry.BINGO_75.getLine(line) & (1L << cell)) != 0) mark += 1L << (line * COUNTER_BITS);
+            }
+            MARK_BY_CELL[cell] = mark;
+        }
+    }
+
+    /**
+     * Returns true if any line counter in a card state is full.
+     */
+    private static boolean hasFullLine(long state) {
+        return (state & state >>> 1 & state >>> 2 & COUNTER_LOW_BITS) != 0;
+    }
+
+    private final int cardCount;
+    // numbers[card * 25 + cell], 0 for the FREE cell
+    private final byte[] numbers;
+    // states[card] is the card's packed play state; see EMPTY_STATE
+    private final long[] states;
+    private final boolean[] called = new boolean[BingoEngine.MAX_NUMBER + 1];
+    private final Partition[] partitions;
+    private final List<Callable<Void>> tasks;
+    private int pendingNumber;
+
+    private int winnerCount;
+    private int[] newWinners = new int[16];
+    private int newWinnerCount;
+
+    /**
+     * @param cards          The card numbers, 25 bytes per card by cell index (the layout of the games.card column).
+     * @param cardCount      The number of cards.
+     * @param partitionCount The number of partitions to split the cards into; use the number of threads that will
+     *                       apply calls.
+     */
+    public TournamentEngine(byte[] cards, int cardCount, int partitionCount) {
+        if (cardCount < 0 || cardCount > MAX_CARDS || cards.length < cardCount * BingoEngine.CELLS) {
+            throw new IllegalArgumentException("Invalid card count: " + cardCount);
+        }
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Invalid partition count: " + partitionCount);
+        }
+        this.cardCount = cardCount;
+        numbers = Arrays.copyOf(cards, cardCount * BingoEngine.CELLS);
+        states = new long[cardCount];
+
+        partitionCount = Math.max(1, Math.min(partitionCount, cardCount));
+        partitions = new Partition[partitionCount];
+        tasks = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            int first = (int) ((long) cardCount * i / partitionCount);
+            int end = (int) ((long) cardCount * (i + 1) / partitionCount);
+            partitions[i] = new Partition(first, end);
+            tasks.add(partitions[i]);
+        }
+        reset();
+    }
+
+    /**
+     * Clears all marks and calls for a new game on the same cards. Only the FREE cells stay marked.
+     */
+    public void reset() {
+        Arrays.fill(states, EMPTY_STATE);
+        Arrays.fill(called, false);
+        // FREE cells are indexed under number 0
+        winnerCount = 0;
+        for (Partition partition : partitions) {
+            partition.apply(0);
+            winnerCount += partition.winnerCount;
+        }
+        newWinnerCount = 0;
+    }
+
+    /**
+     * Marks a called number on every card that holds it, on the calling thread.
+     *
+     * @param number The called number.
+     * @return The number of cards that completed their first line with this number; see {@link #getNewWinner(int)}.
+     */
+    public int call(int number) {
+        if (!startCall(number)) return 0;
+        for (Partition partition : partitions) {
+            partition.apply(number);
+        }
+        return collectWinners();
+    }
+
+    /**
+     * Marks a called number on every card that holds it, applying the partitions in parallel.
+     *
+     * @param number   The called number.
+     * @param executor Runs the partitions; should have at least as many threads as there are partitions.
+     * @return The number of cards that completed their first line with this number; see {@link #getNewWinner(int)}.
+     */
+    public int call(int number, ExecutorService executor) throws InterruptedException {
+        if (partitions.length == 1) return call(number);
+        if (!startCall(number)) return 0;
+        pendingNumber = number;
+        for (Future<Void> done : executor.invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Partition failed", e.getCause());
+            }
+        }
+        return collectWinners();
+    }
+
+    private boolean startCall(int number) {
+        newWinnerCount = 0;
+        if (number < 1 || number > BingoEngine.MAX_NUMBER || called[number]) return false;
+        called[number] = true;
+        return true;
+    }
+
+    private int collectWinners() {
+        // Partitions cover ascending card ranges and list their winners in card order, so this stays sorted
+        for (Partition partition : partitions) {
+            int count = partition.winnerCount;
+            if (count == 0) continue;
+            if (newWinnerCount + count > newWinners.length) {
+                newWinners = Arrays.copyOf(newWinners, Math.max(newWinners.length * 2, newWinnerCount + count));
+            }
+            System.arraycopy(partition.winners, 0, newWinners, newWinnerCount, count);
+            newWinnerCount += count;
+        }
+        winnerCount += newWinnerCount;
+        return newWinnerCount;
+    }
+
+    public int getNewWinnerCount() {
+        return newWinnerCount;
+    }
+
+    /**
+     * Returns a card that completed its first line on the last call, in ascending card order.
+     */
+    public int getNewWinner(int index) {
+        return newWinners[index];
+    }
+
+    public int getWinnerCount() {
+        return winnerCount;
+    }
+
+    public int getCardCount() {
+        return cardCount;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    public int getNumber(int card, int cell) {
+        return numbers[card * BingoEngine.CELLS + cell];
+    }
+
+    /**
+     * Returns a card's mark state as a 25-bit mask where bit (row * 5 + col) is set for a marked cell.
+     */
+    public int getMarks(int card) {
+        return (int) (states[card] >>> MARKS_SHIFT) & ((1 << BingoEngine.CELLS) - 1);
+    }
+
+    public boolean hasWon(int card) {
+        return states[card] < 0;
+    }
+
+    public boolean isCalled(int number) {
+        return number >= 1 && number <= BingoEngine.MAX_NUMBER && called[number];
+    }
+
+    /**
+     * A contiguous range of cards with its own inverted index. Partitions only write the array slots of their own
+     * cards, so they can be applied concurrently.
+     */
+    private final class Partition implements Callable<Void> {
+        final int firstCard;
+        final int endCard;
+        // postings[postingStart[n] .. postingStart[n + 1]) are (card << 5 | cell) for number n; n = 0 is FREE
+        final int[] postingStart = new int[BingoEngine.MAX_NUMBER + 2];
+        final int[] postings;
+        int[] winners = new int[16];
+        int winnerCount;
+
+        Partition(int firstCard, int endCard) {
+            this.firstCard = firstCard;
+            this.endCard = endCard;
+            int start = firstCard * BingoEngine.CELLS;
+            int end = endCard * BingoEngine.CELLS;
+            for (int i = start; i < end; i++) {
+                postingStart[numbers[i] + 1]++;
+            }
+            for (int n = 1; n < postingStart.length; n++) {
+                postingStart[n] += postingStart[n - 1];
+            }
+            postings = new int[end - start];
+            int[] fill = new int[BingoEngine.MAX_NUMBER + 1];
+            for (int i = start; i < end; i++) {
+                int num = numbers[i];
+                int card = i / BingoEngine.CELLS;
+                int cell = i - card * BingoEngine.CELLS;
+                postings[postingStart[num] + fill[num]++] = card << CELL_BITS | cell;
+            }
+        }
+
+        @Override
+        public Void call() {
+            apply(pendingNumber);
+            return null;
+        }
+
+        void apply(int number) {
+            winnerCount = 0;
+            for (int p = postingStart[number], end = postingStart[number + 1]; p < end; p++) {
+                int packed = postings[p];
+                int card = packed >>> CELL_BITS;
+                int cell = packed & CELL_MASK;
+                // Each cell is marked at most once per game, so the add never carries between fields
+                long state = states[card] + MARK_BY_CELL[cell];
+                if (state >= 0 && hasFullLine(state)) {
+                    state |= WON_BIT;
+                    if (winnerCount == winners.length) {
+                        winners = Arrays.copyOf(winners, winners.length * 2);
+                    }
+                    winners[winnerCount++] = card;
+                }
+                states[card] = state;
+            }
+        }
+    }
+}
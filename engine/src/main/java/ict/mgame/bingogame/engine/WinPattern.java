@@ -0,0 +1,152 @@
+package ict.mgame.bingogame.engine;
+
+import java.util.Arrays;
+
+/**
+ * A named winning shape on a card of some {@link CardGeometry}, compiled to one or more masks where bit
+ * (row * columns + col) is a cell that must be marked. The pattern is complete when all cells of any one of its
+ * masks are marked.
+ */
+public final class WinPattern {
+    private final String name;
+    private final long[] masks;
+
+    public WinPattern(String name, long... masks) {
+        if (masks.length == 0) {
+            throw new IllegalArgumentException("Pattern " + name + " has no masks");
+        }
+        for (long mask : masks) {
+            if (mask == 0) {
+                throw new IllegalArgumentException("Pattern " + name + " has an empty mask");
+            }
+        }
+        this.name = name;
+        this.masks = masks.clone();
+    }
+
+    /**
+     * Any of the geometry's win lines: a row, column or diagonal, or for 90-ball a row.
+     */
+    public static WinPattern line(CardGeometry geometry) {
+        long[] lines = new long[geometry.getLineCount()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = geometry.getLine(i);
+        }
+        return new WinPattern("Line", lines);
+    }
+
+    public static WinPattern fourCorners(CardGeometry geometry) {
+        int last = geometry.getColumns() - 1;
+        int bottom = (geometry.getRows() - 1) * geometry.getColumns();
+        return new WinPattern("Four Corners", 1L | 1L << last | 1L << bottom | 1L << (bottom + last));
+    }
+
+    /**
+     * Both diagonals; square grids only.
+     */
+    public static WinPattern x(CardGeometry geometry) {
+        int size = geometry.getRows();
+        if (size != geometry.getColumns()) {
+            throw new IllegalArgumentException("X needs a square grid: " + geometry);
+        }
+        long mask = 0;
+        for (int i = 0; i < size; i++) {
+            mask |= 1L << (i * size + i) | 1L << (i * size + (size - 1 - i));
+        }
+        return new WinPattern("X", mask);
+    }
+
+    /**
+     * A 2x2 block in any corner.
+     */
+    public static WinPattern postageStamp(CardGeometry geometry) {
+        int columns = geometry.getColumns();
+        int rows = geometry.getRows();
+        if (rows < 2 || columns < 2) {
+            throw new IllegalArgumentException("Postage Stamp needs at least 2x2: " + geometry);
+        }
+        long block = 1L | 1L << 1 | 1L << columns | 1L << (columns + 1);
+        int right = columns - 2;
+        int bottom = (rows - 2) * columns;
+        return new WinPattern("Postage Stamp", block, block << right, block << bottom, block << (bottom + right));
+    }
+
+    public static WinPattern blackout(CardGeometry geometry) {
+        return new WinPattern("Blackout", geometry.getAllCells());
+    }
+
+    /**
+     * Returns the built-in pattern with the given name (case-insensitive), or null. Only Line and Blackout suit
+     * geometries with blanks; the registry refuses the other shapes there.
+     *
+     * @throws IllegalArgumentException if the pattern does not fit the geometry.
+     */
+    public static WinPattern builtIn(CardGeometry geometry, String name) {
+        switch (name.toLowerCase()) {
+            case "line": return line(geometry);
+            case "four corners": return fourCorners(geometry);
+            case "x": return x(geometry);
+            case "postage stamp": return postageStamp(geometry);
+            case "blackout": return blackout(geometry);
+            default: return null;
+        }
+    }
+
+    /**
+     * Compiles a pattern drawn as text: one group of cells per row separated by '/', where 'X' marks a required
+     * cell and '.' an ignored one. Alternative shapes are separated by '|'.
+     *
+     * @throws IllegalArgumentException if the shape is malformed or does not match the geometry's grid.
+     */
+    public static WinPattern parse(CardGeometry geometry, String name, String shape) {
+        int rowCount = geometry.getRows();
+        int columns = geometry.getColumns();
+        String[] alternatives = shape.trim().split("\\|");
+        long[] masks = new long[alternatives.length];
+        for (int i = 0; i < alternatives.length; i++) {
+            String[] rows = alternatives[i].trim().split("/");
+            if (rows.length != rowCount) {
+                throw new IllegalArgumentException("Pattern " + name + " needs " + rowCount + " rows: " + alternatives[i]);
+            }
+            for (int row = 0; row < rowCount; row++) {
+                String cells = rows[row].trim();
+                if (cells.length() != columns) {
+                    throw new IllegalArgumentException("Pattern " + name + " needs " + columns + " cells per row: " + cells);
+                }
+                for (int col = 0; col < columns; col++) {
+                    char c = cells.charAt(col);
+                    if (c == 'X' || c == 'x') {
+                        masks[i] |= 1L << (row * columns + col);
+                    } else if (c != '.') {
+                        throw new IllegalArgumentException("Pattern " + name + " has an invalid cell '" + c + "'");
+                    }
+                }
+            }
+        }
+        return new WinPattern(name, masks);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaskCount() {
+        return masks.length;
+    }
+
+    public long getMask(int index) {
+        return masks[index];
+    }
+
+    public boolean matches(long markedMask) {
+        for (long mask : masks) {
+            if ((markedMask & mask) == mask) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name + Arrays.toString(masks);
+    }
+}
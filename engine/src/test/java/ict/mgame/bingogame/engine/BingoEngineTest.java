@@ -0,0 +1,159 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that seeded games replay exactly, that restored call orders rebuild the same marks, and that no game can
+ * start with a winner.
+ */
+public class BingoEngineTest {
+    private static final CardGeometry[] GEOMETRIES = {CardGeometry.BINGO_75, CardGeometry.BINGO_90, CardGeometry.SPEED_16};
+
+    @Test
+    public void resumeGameReplaysTheGame() {
+        Random random = new Random(3);
+        for (int game = 0; game < 300; game++) {
+            CardGeometry geometry = GEOMETRIES[game % GEOMETRIES.length];
+            long seed = random.nextLong();
+            int cardCount = 1 + random.nextInt(20);
+            BingoEngine live = new BingoEngine(new Random(game));
+            // A generator already used for another variant must deal the same as a new one
+            live.newGame(CardGeometry.SPEED_16, 3);
+            live.newGame(geometry, cardCount, seed);
+            int drawIndex = random.nextInt(geometry.getMaxNumber() + 1);
+            for (int i = 0; i < drawIndex; i++) {
+                live.draw();
+            }
+
+            BingoEngine resumed = new BingoEngine(new Random(-game));
+            resumed.resumeGame(geometry, cardCount, seed, drawIndex);
+            assertTrue(resumed.isSeeded());
+            assertEquals(seed, resumed.getSeed());
+            assertArrayEquals(live.getAllCardNumbers(), resumed.getAllCardNumbers());
+            assertEquals(live.getDrawnNumbers(), resumed.getDrawnNumbers());
+            for (int card = 0; card < cardCount; card++) {
+                assertEquals(live.getCards().getMarks(card), resumed.getCards().getMarks(card));
+                assertEquals(live.getCards().getWinningPattern(card), resumed.getCards().getWinningPattern(card));
+            }
+            // And the calls still to come are the same
+            for (int i = drawIndex; i < geometry.getMaxNumber(); i++) {
+                assertEquals(live.draw(), resumed.draw());
+            }
+            assertEquals(0, resumed.draw());
+        }
+    }
+
+    @Test
+    public void seededGamesDealDistinctCards() {
+        for (CardGeometry geometry : GEOMETRIES) {
+            BingoEngine engine = new BingoEngine();
+            engine.newGame(geometry, 200, 7L);
+            int cells = geometry.getCells();
+            int[] numbers = engine.getAllCardNumbers();
+            List<String> cards = new ArrayList<>();
+            for (int card = 0; card < 200; card++) {
+                String text = Arrays.toString(Arrays.copyOfRange(numbers, card * cells, (card + 1) * cells));
+                assertFalse(cards.contains(text));
+                cards.add(text);
+            }
+        }
+    }
+
+    @Test
+    public void restoreDrawnNumbersRebuildsMarks() {
+        Random random = new Random(4);
+        for (CardGeometry geometry : GEOMETRIES) {
+            BingoEngine live = new BingoEngine(random);
+            live.newGame(geometry, 3);
+            for (int i = 0; i < 20; i++) {
+                live.draw();
+            }
+            BingoEngine restored = new BingoEngine(random);
+            restored.setCards(geometry, live.getAllCardNumbers(), 3);
+            restored.restoreDrawnNumbers(new ArrayList<>(live.getDrawnNumbers()));
+            assertFalse(restored.isSeeded());
+            assertEquals(live.getDrawnNumbers(), restored.getDrawnNumbers());
+            for (int card = 0; card < 3; card++) {
+                assertEquals(live.getCards().getMarks(card), restored.getCards().getMarks(card));
+            }
+            // The rest of the deck is every other number once
+            boolean[] seen = new boolean[geometry.getMaxNumber() + 1];
+            for (int number : restored.getDrawnNumbers()) {
+                seen[number] = true;
+            }
+            for (int number; (number = restored.draw()) != 0; ) {
+                assertFalse(seen[number]);
+                seen[number] = true;
+            }
+            for (int number = 1; number <= geometry.getMaxNumber(); number++) {
+                assertTrue(seen[number]);
+            }
+        }
+    }
+
+    @Test
+    public void loadCardKeepsEveryMark() {
+        BingoEngine engine = new BingoEngine(new Random(6));
+        engine.newGame();
+        int[][] card = engine.getCard();
+        boolean[][] marked = new boolean[BingoEngine.SIZE][BingoEngine.SIZE];
+        marked[0][0] = true;
+        marked[4][4] = true;
+        BingoEngine loaded = new BingoEngine(new Random(7));
+        loaded.loadCard(card, marked);
+        assertEquals(1L | 1L << 24 | 1L << BingoEngine.FREE_CELL, loaded.getMarkedMask());
+        assertArrayEquals(engine.getCardNumbers(), loaded.getCardNumbers());
+    }
+
+    @Test
+    public void noWinnerBeforeTheFirstCall() {
+        Random random = new Random(8);
+        String[] shapes = {"Line", "Four Corners", "X", "Postage Stamp", "Blackout"};
+        for (CardGeometry geometry : GEOMETRIES) {
+            for (String shape : shapes) {
+                PatternRegistry patterns;
+                try {
+                    patterns = PatternRegistry.parse(geometry, shape);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                for (int game = 0; game < 500; game++) {
+                    BingoEngine engine = new BingoEngine(random);
+                    engine.newGame(geometry, 5);
+                    engine.setPatterns(patterns);
+                    assertFalse(geometry + " " + shape, engine.hasBingo());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shapesCompleteWithoutCallsAreRefused() {
+        assertRefused(CardGeometry.BINGO_90, "Four Corners");
+        assertRefused(CardGeometry.BINGO_90, "Postage Stamp");
+        assertRefused(CardGeometry.BINGO_75, "Centre = ...../...../..X../...../.....");
+        // Whole rows have a fixed count of numbers, so they stay playable on 90-ball
+        assertEquals(1, PatternRegistry.parse(CardGeometry.BINGO_90, "Line").size());
+        assertEquals(1, PatternRegistry.parse(CardGeometry.BINGO_90, "Blackout").size());
+    }
+
+    private static void assertRefused(CardGeometry geometry, String spec) {
+        try {
+            PatternRegistry.parse(geometry, spec);
+            fail(spec + " accepted on " + geometry);
+        } catch (IllegalArgumentException expected) {
+            // Refused
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link CardFingerprintSet} against a {@link HashSet}, including growth, probing and the zero fingerprint.
+ */
+public class CardFingerprintSetTest {
+    @Test
+    public void matchesHashSetThroughGrowth() {
+        Random random = new Random(1);
+        CardFingerprintSet set = new CardFingerprintSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 200000; i++) {
+            // A narrow range so that duplicates turn up
+            long fingerprint = random.nextInt(100000) * 0x9E3779B97F4A7C15L;
+            assertEquals(expected.add(fingerprint), set.add(fingerprint));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long fingerprint : expected) {
+            assertTrue(set.contains(fingerprint));
+        }
+        for (int i = 0; i < 1000; i++) {
+            long fingerprint = random.nextLong();
+            assertEquals(expected.contains(fingerprint), set.contains(fingerprint));
+        }
+    }
+
+    @Test
+    public void collidingSlotsProbeOn() {
+        CardFingerprintSet set = new CardFingerprintSet(1000);
+        // Same low bits, so the same home slot
+        for (long i = 1; i <= 500; i++) {
+            assertTrue(set.add(i << 32 | 7));
+        }
+        for (long i = 1; i <= 500; i++) {
+            assertTrue(set.contains(i << 32 | 7));
+            assertFalse(set.add(i << 32 | 7));
+        }
+        assertFalse(set.contains(501L << 32 | 7));
+    }
+
+    @Test
+    public void zeroIsAFingerprint() {
+        CardFingerprintSet set = new CardFingerprintSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void clearEmptiesTheSet() {
+        CardFingerprintSet set = new CardFingerprintSet();
+        for (long i = 0; i < 100; i++) {
+            set.add(i);
+        }
+        set.clear();
+        assertEquals(0, set.size());
+        for (long i = 0; i < 100; i++) {
+            assertFalse(set.contains(i));
+        }
+        assertTrue(set.add(5));
+    }
+}
@@ -0,0 +1,133 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link CardGenerator} deals valid cards for every geometry, that unique deals never repeat a card, and
+ * that a seed always deals the same cards.
+ */
+public class CardGeneratorTest {
+    private static final CardGeometry[] GEOMETRIES = {CardGeometry.BINGO_75, CardGeometry.BINGO_90, CardGeometry.SPEED_16,
+            CardGeometry.custom(8, 8, 200, false), CardGeometry.custom(3, 2, 200, false)};
+
+    @Test
+    public void cardsFollowTheGeometry() {
+        for (CardGeometry geometry : GEOMETRIES) {
+            CardGenerator generator = new CardGenerator(geometry, 1L);
+            int rows = geometry.getRows();
+            int columns = geometry.getColumns();
+            int[] card = new int[geometry.getCells()];
+            for (int i = 0; i < 20000; i++) {
+                generator.generate(card, 0);
+                for (int row = 0; row < rows; row++) {
+                    int numbers = 0;
+                    for (int col = 0; col < columns; col++) {
+                        if (card[row * columns + col] != 0) numbers++;
+                    }
+                    int expected = geometry.getNumbersPerRow();
+                    if (geometry.getFreeCell() >= 0 && geometry.getFreeCell() / columns == row) expected--;
+                    assertEquals(geometry + " row " + row, expected, numbers);
+                }
+                for (int col = 0; col < columns; col++) {
+                    int previous = 0;
+                    int numbers = 0;
+                    for (int row = 0; row < rows; row++) {
+                        int number = card[row * columns + col];
+                        if (number == 0) continue;
+                        // In the column's range, ascending down the column
+                        assertEquals(geometry + " " + Arrays.toString(card), col, geometry.columnOf(number));
+                        assertTrue(geometry + " " + Arrays.toString(card), number > previous);
+                        previous = number;
+                        numbers++;
+                    }
+                    assertTrue(geometry + " column " + col + " is empty", numbers > 0);
+                }
+                if (geometry.getFreeCell() >= 0) {
+                    assertEquals(0, card[geometry.getFreeCell()]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void uniqueCardsNeverRepeat() {
+        for (CardGeometry geometry : GEOMETRIES) {
+            CardGenerator generator = new CardGenerator(geometry, 2L);
+            int cells = geometry.getCells();
+            int count = 5000;
+            int[] pool = new int[count * cells];
+            generator.fill(pool, count);
+            assertEquals(count, generator.getIssuedCount());
+            Set<String> seen = new HashSet<>();
+            for (int card = 0; card < count; card++) {
+                assertTrue(seen.add(Arrays.toString(Arrays.copyOfRange(pool, card * cells, (card + 1) * cells))));
+            }
+            generator.clearIssued();
+            assertEquals(0, generator.getIssuedCount());
+        }
+    }
+
+    @Test
+    public void seedDeterminesTheCards() {
+        for (CardGeometry geometry : GEOMETRIES) {
+            int cells = geometry.getCells();
+            int[] first = new int[100 * cells];
+            int[] second = new int[100 * cells];
+            CardGenerator generator = new CardGenerator(geometry, 42L);
+            generator.fill(first, 100);
+            new CardGenerator(geometry, 42L).fill(second, 100);
+            assertArrayEquals(first, second);
+
+            // reset returns a used generator to the state of a new one, issued cards included
+            generator.reset(42L);
+            Arrays.fill(second, 0);
+            generator.fill(second, 100);
+            assertArrayEquals(first, second);
+
+            new CardGenerator(geometry, 43L).fill(second, 100);
+            assertFalse(Arrays.equals(first, second));
+        }
+    }
+
+    @Test
+    public void runningOutOfDistinctCardsFails() {
+        // One cell from three balls: exactly three distinct cards
+        CardGenerator generator = new CardGenerator(CardGeometry.custom(1, 1, 3, false), 1L);
+        int[] pool = new int[4];
+        generator.fill(pool, 3);
+        int[] sorted = Arrays.copyOf(pool, 3);
+        Arrays.sort(sorted);
+        assertArrayEquals(new int[]{1, 2, 3}, sorted);
+        try {
+            generator.generateUnique(pool, 3);
+            fail("Dealt a fourth distinct card from three balls");
+        } catch (IllegalStateException expected) {
+            assertEquals(3, generator.getIssuedCount());
+        }
+    }
+
+    @Test
+    public void fingerprintDependsOnEveryCell() {
+        int[] card = CardGeometry.BINGO_75.generateCard(new Random(5));
+        long fingerprint = CardGenerator.fingerprint(card, 0, card.length);
+        for (int cell = 0; cell < card.length; cell++) {
+            int[] changed = card.clone();
+            changed[cell]++;
+            assertTrue(fingerprint != CardGenerator.fingerprint(changed, 0, changed.length));
+        }
+        int[] offset = new int[card.length + 3];
+        System.arraycopy(card, 0, offset, 3, card.length);
+        assertEquals(fingerprint, CardGenerator.fingerprint(offset, 3, card.length));
+    }
+}
@@ -0,0 +1,187 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the inverted index, marks, winners and near-win counters of {@link CardSet} against a brute-force
+ * evaluation of the same cards after every call.
+ */
+public class CardSetTest {
+    private static final CardGeometry[] GEOMETRIES = {CardGeometry.BINGO_75, CardGeometry.BINGO_90, CardGeometry.SPEED_16};
+    private static final String EVENT_PATTERNS = "Four Corners\nX\nPostage Stamp\n"
+            + "Diamond = ..X../.X.X./X...X/.X.X./..X..\nLine\nBlackout\n";
+
+    @Test
+    public void indexListsEveryCellOfEveryNumber() {
+        Random random = new Random(1);
+        for (CardGeometry geometry : GEOMETRIES) {
+            BingoEngine engine = new BingoEngine(random);
+            engine.newGame(geometry, 40);
+            CardSet cards = engine.getCards();
+            int cells = geometry.getCells();
+            int[] occurrences = new int[geometry.getMaxNumber() + 1];
+            for (int card = 0; card < cards.getCardCount(); card++) {
+                for (int cell = 0; cell < cells; cell++) {
+                    occurrences[cards.getNumber(card, cell)]++;
+                }
+            }
+            for (int number = 1; number <= geometry.getMaxNumber(); number++) {
+                assertEquals(occurrences[number], cards.postingEnd(number) - cards.postingStart(number));
+                for (int p = cards.postingStart(number); p < cards.postingEnd(number); p++) {
+                    assertEquals(number, cards.getNumber(cards.postingCard(p), cards.postingCell(p)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void newCardsHaveOnlyFreeAndBlankCellsMarked() {
+        Random random = new Random(2);
+        for (CardGeometry geometry : GEOMETRIES) {
+            BingoEngine engine = new BingoEngine(random);
+            engine.newGame(geometry, 20);
+            CardSet cards = engine.getCards();
+            for (int card = 0; card < cards.getCardCount(); card++) {
+                for (int cell = 0; cell < geometry.getCells(); cell++) {
+                    boolean marked = (cards.getMarks(card) & (1L << cell)) != 0;
+                    assertEquals(cards.getNumber(card, cell) == 0, marked);
+                }
+            }
+            assertEquals(0, cards.getWinnerCount());
+        }
+    }
+
+    @Test
+    public void winnersMatchBruteForceOnEveryCall() {
+        Random random = new Random(5);
+        for (int game = 0; game < 300; game++) {
+            CardGeometry geometry = GEOMETRIES[game % GEOMETRIES.length];
+            BingoEngine engine = new BingoEngine(random);
+            int cardCount = 1 + random.nextInt(20);
+            engine.newGame(geometry, cardCount);
+            CardSet cards = engine.getCards();
+            PatternRegistry patterns = cards.getPatterns();
+            boolean[] won = new boolean[cardCount];
+            while (engine.getDrawCount() < geometry.getMaxNumber()) {
+                engine.draw();
+                boolean[] newWinner = new boolean[cardCount];
+                for (int i = 0; i < cards.getNewWinnerCount(); i++) {
+                    newWinner[cards.getNewWinner(i)] = true;
+                }
+                for (int card = 0; card < cardCount; card++) {
+                    for (int cell = 0; cell < geometry.getCells(); cell++) {
+                        int number = cards.getNumber(card, cell);
+                        boolean marked = (cards.getMarks(card) & (1L << cell)) != 0;
+                        assertEquals(number == 0 || engine.isCalled(number), marked);
+                    }
+                    boolean wins = patterns.match(cards.getMarks(card)) >= 0;
+                    assertEquals(wins, cards.hasWon(card));
+                    assertEquals(wins && !won[card], newWinner[card]);
+                    won[card] = wins;
+                }
+            }
+            assertEquals(cardCount, cards.getWinnerCount());
+        }
+    }
+
+    @Test
+    public void nearWinCountersMatchBruteForce() {
+        Random random = new Random(9);
+        PatternRegistry event = PatternRegistry.parse(CardGeometry.BINGO_75, EVENT_PATTERNS);
+        for (int game = 0; game < 300; game++) {
+            CardGeometry geometry = GEOMETRIES[game % GEOMETRIES.length];
+            BingoEngine engine = new BingoEngine(new Random(game));
+            engine.newGame(geometry, 1 + random.nextInt(30));
+            if (geometry == CardGeometry.BINGO_75 && random.nextBoolean()) {
+                engine.setPatterns(event);
+            }
+            CardSet cards = engine.getCards();
+            assertNearWins(cards);
+            while (engine.getDrawCount() < geometry.getMaxNumber()) {
+                engine.draw();
+                assertNearWins(cards);
+                if (random.nextInt(40) == 0) {
+                    int card = random.nextInt(cards.getCardCount());
+                    cards.setMarks(card, cards.getMarks(card) | 1L << random.nextInt(geometry.getCells()));
+                    assertNearWins(cards);
+                }
+                if (geometry == CardGeometry.BINGO_75 && random.nextInt(60) == 0) {
+                    engine.setPatterns(random.nextBoolean() ? PatternRegistry.STANDARD : event);
+                    assertNearWins(cards);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void firstPatternRegisteredWins() {
+        Random random = new Random(3);
+        PatternRegistry patterns = PatternRegistry.parse(CardGeometry.BINGO_75, EVENT_PATTERNS);
+        for (int game = 0; game < 300; game++) {
+            BingoEngine engine = new BingoEngine(random);
+            engine.newGame(CardGeometry.BINGO_75, 1 + random.nextInt(20));
+            engine.setPatterns(patterns);
+            CardSet cards = engine.getCards();
+            int[] winningPattern = new int[cards.getCardCount()];
+            while (engine.getDrawCount() < CardGeometry.BINGO_75.getMaxNumber()) {
+                engine.draw();
+                for (int i = 0; i < cards.getNewWinnerCount(); i++) {
+                    int card = cards.getNewWinner(i);
+                    int first = -1;
+                    for (int p = 0; p < patterns.size() && first < 0; p++) {
+                        if (patterns.get(p).matches(cards.getMarks(card))) first = p;
+                    }
+                    assertEquals(first, cards.getWinningPattern(card));
+                    winningPattern[card] = first;
+                }
+            }
+            // A card keeps the pattern it first won with
+            for (int card = 0; card < cards.getCardCount(); card++) {
+                assertEquals(winningPattern[card], cards.getWinningPattern(card));
+            }
+        }
+    }
+
+    private static void assertNearWins(CardSet cards) {
+        PatternRegistry patterns = cards.getPatterns();
+        CardGeometry geometry = cards.getGeometry();
+        int[] winningCalls = new int[geometry.getMaxNumber() + 1];
+        int winners = 0;
+        for (int card = 0; card < cards.getCardCount(); card++) {
+            long marks = cards.getMarks(card);
+            int pattern = patterns.match(marks);
+            assertEquals(pattern >= 0, cards.hasWon(card));
+            if (pattern >= 0) {
+                winners++;
+                assertTrue(patterns.get(cards.getWinningPattern(card)).matches(marks));
+                assertEquals(0, cards.getOneAwayCount(card));
+                assertEquals(0, cards.getOneAwayCells(card));
+                continue;
+            }
+            long oneAwayCells = 0;
+            int oneAwayCount = 0;
+            for (int m = 0; m < patterns.getMaskCount(); m++) {
+                long missing = patterns.getMask(m) & ~marks;
+                if (Long.bitCount(missing) == 1) {
+                    oneAwayCells |= missing;
+                    oneAwayCount++;
+                    winningCalls[cards.getNumber(card, Long.numberOfTrailingZeros(missing))]++;
+                }
+            }
+            assertEquals(oneAwayCells, cards.getOneAwayCells(card));
+            assertEquals(oneAwayCount, cards.getOneAwayCount(card));
+        }
+        for (int number = 1; number <= geometry.getMaxNumber(); number++) {
+            assertEquals(winningCalls[number], cards.getWinningCallCount(number));
+            assertEquals(winningCalls[number] > 0, cards.wouldWin(number));
+        }
+        assertFalse(cards.wouldWin(0));
+        assertEquals(winners, cards.getWinnerCount());
+    }
+}
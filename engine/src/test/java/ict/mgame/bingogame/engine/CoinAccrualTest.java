@@ -0,0 +1,44 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks passive income within and past the accrual window.
+ */
+public class CoinAccrualTest {
+    private static final long INTERVAL_MS = 30_000;
+    private static final long WINDOW_MS = 8 * 60 * 60 * 1000L;
+
+    @Test
+    public void partialIntervalCarriesOver() {
+        CoinAccrual accrual = new CoinAccrual(0, 0, INTERVAL_MS, WINDOW_MS);
+        assertEquals(0, accrual.pending(INTERVAL_MS - 1));
+        assertEquals(1, accrual.materialize(45_000));
+        assertEquals(1, accrual.getStoredCoins());
+        assertEquals(INTERVAL_MS, accrual.getLastAccrualAt());
+        assertEquals(15_000, accrual.msUntilNext(45_000));
+        assertEquals(2, accrual.balance(60_000));
+    }
+
+    @Test
+    public void incomeStopsAtTheWindow() {
+        long now = 30L * 24 * 60 * 60 * 1000;
+        CoinAccrual accrual = new CoinAccrual(20, 0, INTERVAL_MS, WINDOW_MS);
+        int windowCoins = (int) (WINDOW_MS / INTERVAL_MS);
+        assertEquals(windowCoins, accrual.pending(now));
+        assertEquals(INTERVAL_MS, accrual.msUntilNext(now));
+        assertEquals(windowCoins, accrual.materialize(now));
+        assertEquals(20 + windowCoins, accrual.getStoredCoins());
+        // The time past the window is dropped, so income starts again from now
+        assertEquals(0, accrual.pending(now));
+        assertEquals(1, accrual.pending(now + INTERVAL_MS));
+    }
+
+    @Test
+    public void noWindowWithoutACap() {
+        CoinAccrual accrual = new CoinAccrual(0, 0, INTERVAL_MS);
+        assertEquals(2 * WINDOW_MS / INTERVAL_MS, accrual.pending(2 * WINDOW_MS));
+    }
+}
@@ -0,0 +1,120 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link GameJournal} keeps its records across reopening, stops at a torn record, and numbers on after a
+ * reset.
+ */
+public class GameJournalTest {
+    // The segment header, then records of RECORD_SIZE bytes
+    private static final int HEADER_SIZE = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsSurviveReopening() throws IOException {
+        File file = folder.newFile();
+        try (GameJournal journal = new GameJournal(file, 100, 41)) {
+            for (int i = 0; i < 10; i++) {
+                // Numbering starts after the checkpoint
+                assertEquals(42 + i, journal.append(1, 7, i, 100L << 33 | i, -i));
+            }
+        }
+        try (GameJournal journal = new GameJournal(file, 100, 0)) {
+            assertEquals(10, journal.size());
+            assertEquals(51, journal.getLastSeq());
+            List<Integer> seqs = new ArrayList<>();
+            journal.replay(46, (seq, type, userId, a, b, c) -> {
+                seqs.add(seq);
+                assertEquals(1, type);
+                assertEquals(7, userId);
+                assertEquals(100L << 33 | a, b);
+                assertEquals(-a, c);
+            });
+            assertEquals(List.of(47, 48, 49, 50, 51), seqs);
+        }
+    }
+
+    @Test
+    public void tornRecordEndsTheJournal() throws IOException {
+        File file = folder.newFile();
+        try (GameJournal journal = new GameJournal(file, 100, 0)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(1, 7, i, i, i);
+            }
+        }
+        // Corrupt the payload of the eighth record, so its CRC no longer matches
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(HEADER_SIZE + 7 * GameJournal.RECORD_SIZE + 14);
+            raw.write(0x55);
+        }
+        try (GameJournal journal = new GameJournal(file, 100, 0)) {
+            assertEquals(7, journal.size());
+            assertEquals(7, journal.getLastSeq());
+            // The next append overwrites the torn record
+            assertEquals(8, journal.append(1, 7, 0, 0, 0));
+        }
+        try (GameJournal journal = new GameJournal(file, 100, 0)) {
+            assertEquals(8, journal.size());
+        }
+    }
+
+    @Test
+    public void resetNumbersOn() throws IOException {
+        File file = folder.newFile();
+        try (GameJournal journal = new GameJournal(file, 100, 0)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(1, 7, i, i, i);
+            }
+            journal.reset();
+            assertEquals(0, journal.size());
+            assertEquals(5, journal.getLastSeq());
+            assertEquals(6, journal.append(1, 7, 0, 0, 0));
+        }
+        try (GameJournal journal = new GameJournal(file, 100, 0)) {
+            // The records from before the reset cannot continue the new chain
+            assertEquals(1, journal.size());
+            assertEquals(6, journal.getLastSeq());
+            List<Integer> seqs = new ArrayList<>();
+            journal.replay(0, (seq, type, userId, a, b, c) -> seqs.add(seq));
+            assertEquals(List.of(6), seqs);
+        }
+    }
+
+    @Test
+    public void fullSegmentRefusesAppends() throws IOException {
+        try (GameJournal journal = new GameJournal(folder.newFile(), 3, 0)) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i + 1, journal.append(1, 1, 1, 1, 1));
+            }
+            assertEquals(-1, journal.append(1, 1, 1, 1, 1));
+            assertEquals(3, journal.size());
+        }
+    }
+
+    @Test
+    public void unreadableHeaderStartsAfterTheCheckpoint() throws IOException {
+        File file = folder.newFile();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.write(new byte[HEADER_SIZE + 10 * GameJournal.RECORD_SIZE]);
+            raw.seek(0);
+            raw.writeInt(0xDEADBEEF);
+        }
+        try (GameJournal journal = new GameJournal(file, 10, 99)) {
+            assertEquals(0, journal.size());
+            assertEquals(100, journal.append(1, 1, 1, 1, 1));
+        }
+    }
+}
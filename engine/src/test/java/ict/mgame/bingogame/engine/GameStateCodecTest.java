@@ -0,0 +1,98 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips saved 75-ball games through the binary format and the legacy text helpers.
+ */
+public class GameStateCodecTest {
+    @Test
+    public void binaryRoundTrip() {
+        Random random = new Random(1);
+        for (int game = 0; game < 200; game++) {
+            BingoEngine engine = new BingoEngine(random);
+            engine.newGame();
+            int draws = random.nextInt(BingoEngine.MAX_NUMBER + 1);
+            for (int i = 0; i < draws; i++) {
+                engine.draw();
+            }
+            byte[] blob = GameStateCodec.encode(engine);
+            assertTrue(GameStateCodec.isValid(blob));
+            assertEquals(1 + BingoEngine.CELLS + 1 + draws + 4, blob.length);
+            // The array form used by the database encodes the same bytes
+            assertArrayEquals(blob, GameStateCodec.encode(engine.getCard(), engine.getDrawnNumbers(), engine.getMarked()));
+
+            BingoEngine decoded = new BingoEngine(random);
+            assertTrue(GameStateCodec.decode(blob, decoded));
+            assertArrayEquals(engine.getCardNumbers(), decoded.getCardNumbers());
+            assertEquals(engine.getDrawnNumbers(), decoded.getDrawnNumbers());
+            assertEquals(engine.getMarkedMask(), decoded.getMarkedMask());
+            assertEquals(engine.hasBingo(), decoded.hasBingo());
+
+            assertArrayEquals(engine.getCard(), GameStateCodec.decodeCard(blob));
+            assertEquals(engine.getDrawnNumbers(), GameStateCodec.decodeDrawn(blob));
+            assertArrayEquals(engine.getMarked(), GameStateCodec.decodeMarked(blob));
+            assertEquals(engine.getMarkedMask(), GameStateCodec.decodeMarkedMask(blob));
+        }
+    }
+
+    @Test
+    public void invalidBlobsAreRejected() {
+        BingoEngine engine = new BingoEngine(new Random(2));
+        engine.newGame();
+        engine.draw();
+        byte[] blob = GameStateCodec.encode(engine);
+
+        assertFalse(GameStateCodec.isValid(null));
+        assertFalse(GameStateCodec.isValid(new byte[0]));
+        assertFalse(GameStateCodec.isValid(Arrays.copyOf(blob, blob.length - 1)));
+        assertFalse(GameStateCodec.isValid(Arrays.copyOf(blob, blob.length + 1)));
+        byte[] wrongVersion = blob.clone();
+        wrongVersion[0] = GameStateCodec.FORMAT_VERSION + 1;
+        assertFalse(GameStateCodec.isValid(wrongVersion));
+
+        BingoEngine untouched = new BingoEngine(new Random(3));
+        untouched.newGame();
+        int[] numbers = untouched.getCardNumbers();
+        assertFalse(GameStateCodec.decode(wrongVersion, untouched));
+        assertArrayEquals(numbers, untouched.getCardNumbers());
+    }
+
+    @Test
+    public void legacyTextRoundTrip() {
+        BingoEngine engine = new BingoEngine(new Random(4));
+        engine.newGame();
+        for (int i = 0; i < 30; i++) {
+            engine.draw();
+        }
+        int[][] card = engine.getCard();
+        List<Integer> drawn = new ArrayList<>(engine.getDrawnNumbers());
+        boolean[][] marked = engine.getMarked();
+
+        assertArrayEquals(card, GameStateCodec.deserializeCard(GameStateCodec.serializeCard(card)));
+        assertEquals(drawn, GameStateCodec.deserializeList(GameStateCodec.serializeList(drawn)));
+        assertArrayEquals(marked, GameStateCodec.deserializeMarked(GameStateCodec.serializeMarked(marked)));
+    }
+
+    @Test
+    public void legacyTextEdgeCases() {
+        assertNull(GameStateCodec.deserializeCard(""));
+        assertNull(GameStateCodec.deserializeCard("1,2,3"));
+        assertNull(GameStateCodec.deserializeCard(String.join(",", Collections.nCopies(25, "x"))));
+        assertEquals(Collections.emptyList(), GameStateCodec.deserializeList(""));
+        assertEquals("", GameStateCodec.serializeList(Collections.emptyList()));
+        assertArrayEquals(new boolean[5][5], GameStateCodec.deserializeMarked(""));
+    }
+}
@@ -0,0 +1,142 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the Fenwick ranks and the top list of {@link Leaderboard} against a sort of every player after random wins,
+ * losses and new players.
+ */
+public class LeaderboardTest {
+    private static final int TOP_SIZE = 10;
+
+    @Test
+    public void matchesSortedPlayers() {
+        Random random = new Random(3);
+        for (int round = 0; round < 10; round++) {
+            Leaderboard board = new Leaderboard(TOP_SIZE);
+            Map<String, Integer> wins = new HashMap<>();
+            // Odd rounds start from a load: counts without names, then the top list
+            if (round % 2 == 1) {
+                Map<Integer, Integer> players = new HashMap<>();
+                for (int i = 0; i < 2000; i++) {
+                    int w = random.nextInt(30);
+                    wins.put("player" + i, w);
+                    players.merge(w, 1, Integer::sum);
+                }
+                players.forEach(board::addPlayers);
+                board.setTop(sorted(wins, TOP_SIZE));
+            }
+            for (int step = 0; step < 10000; step++) {
+                if (random.nextInt(10) == 0 || wins.isEmpty()) {
+                    String name = "new" + round + "_" + step;
+                    wins.put(name, 0);
+                    board.addPlayer(name, 0);
+                } else {
+                    List<String> names = new ArrayList<>(wins.keySet());
+                    String name = names.get(random.nextInt(names.size()));
+                    int oldWins = wins.get(name);
+                    int newWins = Math.max(0, oldWins + (random.nextInt(20) == 0 ? -random.nextInt(5) : random.nextInt(3)));
+                    if (random.nextInt(500) == 0) {
+                        // Past the initial table, so it grows
+                        newWins = oldWins + 200;
+                    }
+                    wins.put(name, newWins);
+                    board.changeWins(name, oldWins, newWins);
+                }
+                if (!board.isTopComplete()) {
+                    board.setTop(sorted(wins, TOP_SIZE));
+                }
+                if (step % 97 == 0) {
+                    assertBoard(board, wins, random);
+                }
+            }
+            assertBoard(board, wins, random);
+        }
+    }
+
+    @Test
+    public void tiesShareARank() {
+        Leaderboard board = new Leaderboard(TOP_SIZE);
+        board.addPlayer("carol", 5);
+        board.addPlayer("alice", 5);
+        board.addPlayer("bob", 7);
+        board.addPlayer("dave", 1);
+        assertEquals(1, board.rankOf(7));
+        assertEquals(2, board.rankOf(5));
+        assertEquals(4, board.rankOf(1));
+        // A win count nobody has ranks after everyone above it
+        assertEquals(4, board.rankOf(3));
+        assertEquals(5, board.rankOf(0));
+
+        // Ties are listed by name
+        List<Leaderboard.Entry> top = board.getTop();
+        assertEquals("bob", top.get(0).name);
+        assertEquals("alice", top.get(1).name);
+        assertEquals("carol", top.get(2).name);
+        assertEquals("dave", top.get(3).name);
+    }
+
+    @Test
+    public void droppingOutOfAFullTopListMarksItIncomplete() {
+        Leaderboard board = new Leaderboard(2);
+        board.addPlayer("a", 10);
+        board.addPlayer("b", 9);
+        board.addPlayer("c", 8);
+        assertTrue(board.isTopComplete());
+        // b now ranks below c, who is not in the list
+        board.changeWins("b", 9, 1);
+        assertFalse(board.isTopComplete());
+    }
+
+    @Test
+    public void negativeWinsAreRejected() {
+        Leaderboard board = new Leaderboard(TOP_SIZE);
+        try {
+            board.addPlayer("a", -1);
+            fail("Accepted negative wins");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(0, board.getPlayerCount());
+        }
+    }
+
+    private static void assertBoard(Leaderboard board, Map<String, Integer> wins, Random random) {
+        assertEquals(wins.size(), board.getPlayerCount());
+        List<Leaderboard.Entry> expected = sorted(wins, TOP_SIZE);
+        List<Leaderboard.Entry> top = board.getTop();
+        assertEquals(expected.size(), top.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).name, top.get(i).name);
+            assertEquals(expected.get(i).wins, top.get(i).wins);
+        }
+        for (int query = 0; query < 20; query++) {
+            int w = random.nextInt(400) - 1;
+            int above = 0;
+            for (int v : wins.values()) {
+                if (v > w) above++;
+            }
+            assertEquals(above, board.countAbove(w));
+            assertEquals(above + 1, board.rankOf(w));
+        }
+    }
+
+    private static List<Leaderboard.Entry> sorted(Map<String, Integer> wins, int limit) {
+        List<Map.Entry<String, Integer>> players = new ArrayList<>(wins.entrySet());
+        players.sort((x, y) -> !x.getValue().equals(y.getValue()) ? y.getValue() - x.getValue() : x.getKey().compareTo(y.getKey()));
+        List<Leaderboard.Entry> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, players.size()); i++) {
+            top.add(new Leaderboard.Entry(players.get(i).getKey(), players.get(i).getValue()));
+        }
+        return top;
+    }
+}
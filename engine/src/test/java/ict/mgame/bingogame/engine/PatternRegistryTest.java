@@ -0,0 +1,63 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the text form of win patterns and the per-cell mask lookup.
+ */
+public class PatternRegistryTest {
+    @Test
+    public void parsesBuiltInsAndShapes() {
+        PatternRegistry patterns = PatternRegistry.parse(CardGeometry.BINGO_75,
+                "# Event\n\nFour Corners\nX\nDiamond = ..X../.X.X./X...X/.X.X./..X..\nblackout\n");
+        assertEquals(4, patterns.size());
+        assertEquals("Four Corners", patterns.get(0).getName());
+        assertEquals("Diamond", patterns.get(2).getName());
+        long diamond = 1L << 2 | 1L << 6 | 1L << 8 | 1L << 10 | 1L << 14 | 1L << 16 | 1L << 18 | 1L << 22;
+        assertEquals(diamond, patterns.get(2).getMask(0));
+        assertEquals(2, patterns.match(diamond));
+        assertEquals(-1, patterns.match(diamond & ~(1L << 22)));
+    }
+
+    @Test
+    public void alternativeShapesAreOnePattern() {
+        PatternRegistry patterns = PatternRegistry.parse(CardGeometry.SPEED_16, "Edge = XXXX/..../..../.... | ..../..../..../XXXX");
+        assertEquals(1, patterns.size());
+        assertEquals(2, patterns.getMaskCount());
+        assertEquals(0, patterns.match(0xF000L));
+    }
+
+    @Test
+    public void matchThroughSeesOnlyShapesThroughTheCell() {
+        PatternRegistry patterns = PatternRegistry.standard(CardGeometry.SPEED_16);
+        long topRow = 0xFL;
+        assertEquals(0, patterns.matchThrough(topRow, 0));
+        assertEquals(-1, patterns.matchThrough(topRow, 4));
+        for (int cell = 0; cell < CardGeometry.SPEED_16.getCells(); cell++) {
+            for (int m : patterns.masksThrough(cell)) {
+                assertTrue((patterns.getMask(m) & (1L << cell)) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void malformedSpecsAreRejected() {
+        assertRejected(CardGeometry.BINGO_75, "Bogus");
+        assertRejected(CardGeometry.BINGO_75, "Bad = XX/..");
+        assertRejected(CardGeometry.BINGO_75, "Bad = XXXXX/XXXXX/XXXXX/XXXXX/XXXXO");
+        assertRejected(CardGeometry.BINGO_75, "# only a comment");
+    }
+
+    private static void assertRejected(CardGeometry geometry, String spec) {
+        try {
+            PatternRegistry.parse(geometry, spec);
+            fail(spec + " accepted on " + geometry);
+        } catch (IllegalArgumentException expected) {
+            // Rejected
+        }
+    }
+}
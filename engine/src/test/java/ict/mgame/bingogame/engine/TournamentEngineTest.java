@@ -0,0 +1,106 @@
+package ict.mgame.bingogame.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays the same cards and calls through {@link TournamentEngine}'s packed line counters and through {@link CardSet},
+ * serially and across partitions, and expects the same marks and winners on every call.
+ */
+public class TournamentEngineTest {
+    @Test
+    public void matchesCardSetOnEveryCall() throws InterruptedException {
+        Random random = new Random(7);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int game = 0; game < 150; game++) {
+                int cardCount = 1 + random.nextInt(500);
+                int[] numbers = new int[cardCount * BingoEngine.CELLS];
+                byte[] bytes = new byte[numbers.length];
+                for (int card = 0; card < cardCount; card++) {
+                    System.arraycopy(BingoEngine.generateCard(random), 0, numbers, card * BingoEngine.CELLS, BingoEngine.CELLS);
+                }
+                for (int i = 0; i < numbers.length; i++) {
+                    bytes[i] = (byte) numbers[i];
+                }
+                CardSet cards = new CardSet();
+                cards.setCards(CardGeometry.BINGO_75, numbers, cardCount);
+                TournamentEngine tournament = new TournamentEngine(bytes, cardCount, 1 + random.nextInt(5));
+                boolean parallel = game % 2 == 0;
+
+                for (int number : shuffledDeck(random)) {
+                    int winners = cards.apply(number);
+                    assertEquals(winners, parallel ? tournament.call(number, executor) : tournament.call(number));
+                    int[] expected = new int[winners];
+                    int[] actual = new int[winners];
+                    for (int i = 0; i < winners; i++) {
+                        expected[i] = cards.getNewWinner(i);
+                        actual[i] = tournament.getNewWinner(i);
+                    }
+                    Arrays.sort(expected);
+                    // Reported in ascending card order
+                    assertArrayEquals(expected, actual);
+                    assertTrue(tournament.isCalled(number));
+                    // A repeated call changes nothing
+                    assertEquals(0, tournament.call(number));
+                }
+                for (int card = 0; card < cardCount; card++) {
+                    assertEquals(cards.getMarks(card), tournament.getMarks(card));
+                    assertTrue(tournament.hasWon(card));
+                }
+                assertEquals(cardCount, tournament.getWinnerCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void resetKeepsOnlyFreeCellsMarked() {
+        Random random = new Random(11);
+        int cardCount = 50;
+        byte[] bytes = new byte[cardCount * BingoEngine.CELLS];
+        for (int card = 0; card < cardCount; card++) {
+            int[] numbers = BingoEngine.generateCard(random);
+            for (int cell = 0; cell < BingoEngine.CELLS; cell++) {
+                bytes[card * BingoEngine.CELLS + cell] = (byte) numbers[cell];
+            }
+        }
+        TournamentEngine tournament = new TournamentEngine(bytes, cardCount, 4);
+        for (int number : shuffledDeck(random)) {
+            tournament.call(number);
+        }
+        tournament.reset();
+        assertEquals(0, tournament.getWinnerCount());
+        for (int card = 0; card < cardCount; card++) {
+            assertEquals(1 << BingoEngine.FREE_CELL, tournament.getMarks(card));
+            assertFalse(tournament.hasWon(card));
+        }
+        for (int number = 1; number <= BingoEngine.MAX_NUMBER; number++) {
+            assertFalse(tournament.isCalled(number));
+        }
+    }
+
+    private static int[] shuffledDeck(Random random) {
+        int[] deck = new int[BingoEngine.MAX_NUMBER];
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = i + 1;
+        }
+        for (int i = deck.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = deck[i];
+            deck[i] = deck[j];
+            deck[j] = tmp;
+        }
+        return deck;
+    }
+}
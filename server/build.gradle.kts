@@ -0,0 +1,19 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":engine"))
+}
+
+// Run with: ./gradlew :server:run --args="--clients 10000"  (see RoomLoadTest for all options)
+// 10k clients hold 20k sockets in one JVM, so raise the open file limit first (ulimit -n 65536).
+application {
+    mainClass.set("ict.mgame.bingogame.server.RoomLoadTest")
+    applicationDefaultJvmArgs = listOf("-Xmx1g")
+}
@@ -0,0 +1,328 @@
+package ict.mgame.bingogame.server;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.LatencyHistogram;
+import ict.mgame.bingogame.engine.PatternRegistry;
+
+/**
+ * Loopback load test of a {@link RoomServer}: connects many simulated players, plays one game to the last call and
+ * reports how long each broadcast took to reach the players. Server and players share one JVM, so the nanoTime stamped
+ * into each DRAW frame is directly comparable with the time a player reads it. Players mark their cards as numbers
+ * arrive and claim as soon as they see a win; a few also make a false claim after the first call, which the server
+ * must reject.
+ *
+ * <pre>
+ * Options (defaults in brackets):
+ *   --clients N        simulated players [10000]
+ *   --threads N        client selector threads [2]
+ *   --variant N        CardGeometry id, 1 = 75-ball, 2 = 90-ball, 3 = Speed 4x4 [1]
+ *   --draws N          numbers to call, at most the variant's range [all]
+ *   --interval-ms N    pause between calls once every player has the previous one [0]
+ *   --false-claims N   players who claim after the first call [100]
+ *   --seed N           [42]
+ * </pre>
+ */
+public class RoomLoadTest {
+    private static final long TIMEOUT_NS = TimeUnit.SECONDS.toNanos(60);
+
+    private final CardGeometry geometry;
+    private final PatternRegistry patterns;
+    private final Driver[] drivers;
+    private volatile boolean running = true;
+
+    // Progress counters read by the main thread
+    private final AtomicInteger cardsReceived = new AtomicInteger();
+    // Players who have received each draw, by draw count
+    private final AtomicIntegerArray drawsReceived;
+    private final AtomicInteger claimsSent = new AtomicInteger();
+    private final AtomicInteger claimsAccepted = new AtomicInteger();
+    private final AtomicInteger claimsRejected = new AtomicInteger();
+
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(RoomProtocol.MAX_FRAME);
+        // Cell of each number on the player's card, -1 if absent
+        final int[] cellOf;
+        long marks;
+        boolean claimed;
+        final boolean falseClaim;
+
+        Client(SocketChannel channel, int maxNumber, boolean falseClaim) {
+            this.channel = channel;
+            cellOf = new int[maxNumber + 1];
+            this.falseClaim = falseClaim;
+        }
+    }
+
+    /**
+     * One selector thread serving a share of the players, with its own latency counts.
+     */
+    private final class Driver extends Thread {
+        final Selector selector;
+        final Consumer<SelectionKey> keyHandler = this::handle;
+        final LatencyHistogram latency = new LatencyHistogram();
+        // The slowest delivery of each draw on this thread, by draw count
+        final long[] slowest;
+        final ByteBuffer claim = ByteBuffer.allocate(2);
+
+        Driver(int index) throws IOException {
+            super("room-client-" + index);
+            setDaemon(true);
+            selector = Selector.open();
+            slowest = new long[geometry.getMaxNumber() + 1];
+            claim.put((byte) RoomProtocol.CLAIM_LENGTH).put((byte) RoomProtocol.CLAIM).flip();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(keyHandler, 100);
+                }
+                selector.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Client client = (Client) key.attachment();
+            ByteBuffer in = client.in;
+            try {
+                if (client.channel.read(in) < 0) {
+                    key.cancel();
+                    return;
+                }
+            } catch (IOException e) {
+                key.cancel();
+                return;
+            }
+            long now = System.nanoTime();
+            in.flip();
+            while (in.hasRemaining()) {
+                int start = in.position();
+                int length = in.get(start) & 0xFF;
+                if (in.remaining() < 1 + length) break;
+                in.position(start + 2);
+                int type = in.get(start + 1);
+                if (type == RoomProtocol.DRAW) {
+                    onDraw(client, in.get() & 0xFF, in.get() & 0xFF, now - in.getLong());
+                } else if (type == RoomProtocol.CARD) {
+                    onCard(client, in);
+                } else if (type == RoomProtocol.RESULT) {
+                    (in.get() != 0 ? claimsAccepted : claimsRejected).incrementAndGet();
+                }
+                in.position(start + 1 + length);
+            }
+            in.compact();
+        }
+
+        private void onCard(Client client, ByteBuffer in) {
+            in.get(); // Variant
+            in.getInt(); // Card index
+            int cells = in.get() & 0xFF;
+            Arrays.fill(client.cellOf, -1);
+            // FREE and blank cells start marked, as on the server
+            long marks = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                int number = in.get() & 0xFF;
+                if (number != 0) {
+                    client.cellOf[number] = cell;
+                } else {
+                    marks |= 1L << cell;
+                }
+            }
+            client.marks = marks;
+            client.claimed = false;
+            cardsReceived.incrementAndGet();
+        }
+
+        private void onDraw(Client client, int drawCount, int number, long latencyNs) {
+            latency.record(latencyNs);
+            if (latencyNs > slowest[drawCount]) slowest[drawCount] = latencyNs;
+            int cell = client.cellOf[number];
+            if (cell >= 0) client.marks |= 1L << cell;
+            if (!client.claimed && (patterns.match(client.marks) >= 0 || client.falseClaim)) {
+                client.claimed = true;
+                claim.rewind();
+                try {
+                    client.channel.write(claim);
+                    claimsSent.incrementAndGet();
+                } catch (IOException e) {
+                    // The server dropped this player; its missing deliveries show up as a timeout
+                }
+            }
+            drawsReceived.incrementAndGet(drawCount);
+        }
+    }
+
+    public RoomLoadTest(CardGeometry geometry, int threads) throws IOException {
+        this.geometry = geometry;
+        patterns = PatternRegistry.standard(geometry);
+        drawsReceived = new AtomicIntegerArray(geometry.getMaxNumber() + 1);
+        drivers = new Driver[threads];
+        for (int i = 0; i < threads; i++) {
+            drivers[i] = new Driver(i);
+        }
+    }
+
+    /**
+     * Connects a player, sends its JOIN and hands it to a driver thread. Call before {@link #startDrivers()}.
+     */
+    void connect(InetSocketAddress address, int index, boolean falseClaim) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ByteBuffer join = ByteBuffer.allocate(2);
+        join.put((byte) RoomProtocol.JOIN_LENGTH).put((byte) RoomProtocol.JOIN).flip();
+        channel.write(join);
+        channel.configureBlocking(false);
+        Client client = new Client(channel, geometry.getMaxNumber(), falseClaim);
+        channel.register(drivers[index % drivers.length].selector, SelectionKey.OP_READ, client);
+    }
+
+    void startDrivers() {
+        for (Driver driver : drivers) {
+            driver.start();
+        }
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        for (Driver driver : drivers) {
+            driver.join();
+        }
+    }
+
+    private static void await(BooleanSupplier condition, String what) {
+        long deadline = System.nanoTime() + TIMEOUT_NS;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out waiting for " + what);
+            }
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = 10000;
+        int threads = 2;
+        int variant = CardGeometry.BINGO_75.getId();
+        int draws = Integer.MAX_VALUE;
+        long intervalMs = 0;
+        int falseClaims = 100;
+        long seed = 42;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--clients": clients = Integer.parseInt(value); break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--variant": variant = Integer.parseInt(value); break;
+                    case "--draws": draws = Integer.parseInt(value); break;
+                    case "--interval-ms": intervalMs = Long.parseLong(value); break;
+                    case "--false-claims": falseClaims = Integer.parseInt(value); break;
+                    case "--seed": seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (CardGeometry.byId(variant) == null) {
+                throw new IllegalArgumentException("Unknown variant: " + variant);
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+            System.err.println("See the RoomLoadTest class comment for the options.");
+            System.exit(2);
+        }
+
+        PrintStream out = System.out;
+        CardGeometry geometry = CardGeometry.byId(variant);
+        draws = Math.min(draws, geometry.getMaxNumber());
+        falseClaims = Math.min(falseClaims, clients);
+        RoomServer server = new RoomServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), geometry, seed);
+        Thread serverThread = new Thread(server, "room-server");
+        serverThread.start();
+        RoomLoadTest test = new RoomLoadTest(geometry, threads);
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        out.println("Room: " + geometry + ", " + clients + " players on " + threads + " client threads, seed " + seed);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            test.connect(address, i, i < falseClaims);
+        }
+        test.startDrivers();
+        final int players = clients;
+        await(() -> server.getJoinedCount() == players, "players to join");
+        out.printf("Connected and joined in %.2f s%n", (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        server.startGame();
+        await(() -> test.cardsReceived.get() == players, "cards");
+        out.printf("Dealt %d cards in %.2f s%n", players, (System.nanoTime() - start) / 1e9);
+
+        LatencyHistogram rounds = new LatencyHistogram();
+        start = System.nanoTime();
+        for (int draw = 1; draw <= draws; draw++) {
+            final int drawCount = draw;
+            long called = System.nanoTime();
+            server.callNext();
+            await(() -> test.drawsReceived.get(drawCount) == players, "draw " + draw);
+            rounds.record(System.nanoTime() - called);
+            if (intervalMs > 0) Thread.sleep(intervalMs);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        await(() -> test.claimsAccepted.get() + test.claimsRejected.get() == test.claimsSent.get(), "claim results");
+        test.stop();
+        server.close();
+        serverThread.join();
+
+        LatencyHistogram deliveries = new LatencyHistogram();
+        LatencyHistogram fanOut = new LatencyHistogram();
+        for (int draw = 1; draw <= draws; draw++) {
+            long slowest = 0;
+            for (Driver driver : test.drivers) {
+                slowest = Math.max(slowest, driver.slowest[draw]);
+            }
+            fanOut.record(slowest);
+        }
+        for (Driver driver : test.drivers) {
+            deliveries.merge(driver.latency);
+        }
+        out.printf("%d calls in %.2f s, %d frames delivered (%.0f frames/s)%n%n", draws, seconds,
+                deliveries.getCount(), deliveries.getCount() / seconds);
+        print(out, "delivery", deliveries);
+        print(out, "fan-out", fanOut);
+        print(out, "round", rounds);
+        out.printf("%nClaims: %d sent, %d accepted, %d rejected (server: %d accepted, %d rejected; %d false claims)%n",
+                test.claimsSent.get(), test.claimsAccepted.get(), test.claimsRejected.get(),
+                server.getClaimsAccepted(), server.getClaimsRejected(), falseClaims);
+        out.println("Players dropped as too slow: " + server.getDroppedPlayers());
+    }
+
+    /**
+     * Prints latency percentiles in microseconds: delivery is per player and call, fan-out the slowest player of each
+     * call, round the time from asking for a call until every player had it.
+     */
+    private static void print(PrintStream out, String label, LatencyHistogram histogram) {
+        out.printf("%-9s us: mean %9.1f  p50 %9.1f  p90 %9.1f  p99 %9.1f  p99.9 %9.1f  max %9.1f%n", label,
+                histogram.getMean() / 1e3, histogram.getPercentile(50) / 1e3, histogram.getPercentile(90) / 1e3,
+                histogram.getPercentile(99) / 1e3, histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+}
@@ -0,0 +1,39 @@
+package ict.mgame.bingogame.server;
+
+/**
+ * The room's binary frames. Every frame is [length u8][type u8][payload], where length counts the bytes after
+ * itself; multi-byte fields are big-endian.
+ *
+ * <pre>
+ * JOIN   client to server, no payload: deal me a card in the next game
+ * CARD   server to client: [variant u8][card index s32][cells u8][number u8 per cell, 0 for FREE and blank]
+ * DRAW   server to client: [draw count u8][number u8][server nanoTime at broadcast s64]
+ * CLAIM  client to server, no payload: my card has won
+ * RESULT server to client: [accepted u8][pattern index s8, -1 if rejected][draw count u8]
+ * </pre>
+ */
+public final class RoomProtocol {
+    public static final int JOIN = 1;
+    public static final int CARD = 2;
+    public static final int DRAW = 3;
+    public static final int CLAIM = 4;
+    public static final int RESULT = 5;
+
+    public static final int JOIN_LENGTH = 1;
+    public static final int DRAW_LENGTH = 1 + 1 + 1 + 8;
+    public static final int CLAIM_LENGTH = 1;
+    public static final int RESULT_LENGTH = 1 + 1 + 1 + 1;
+
+    // The largest frame, including its length byte
+    public static final int MAX_FRAME = 1 + 255;
+
+    private RoomProtocol() {
+    }
+
+    /**
+     * Returns the length byte of a CARD frame for a card with the given number of cells.
+     */
+    public static int cardLength(int cells) {
+        return 1 + 1 + 4 + 1 + cells;
+    }
+}
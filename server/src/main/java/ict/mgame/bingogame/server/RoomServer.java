@@ -0,0 +1,377 @@
+package ict.mgame.bingogame.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CardGeometry;
+import ict.mgame.bingogame.engine.CardSet;
+
+/**
+ * A multiplayer bingo room on one non-blocking selector thread. Players connect and JOIN; each game deals every joined
+ * player a distinct card from a seeded {@link BingoEngine}, and each call is encoded once and written to every seated
+ * player. Claims are checked against the server's own copy of the issued cards, so a client can only win with the
+ * card it was dealt and the numbers actually called. See {@link RoomProtocol} for the frames.
+ * <p>
+ * {@link #run()} is the selector loop; {@link #startGame()}, {@link #callNext()} and {@link #close()} may be called
+ * from any thread and take effect on the loop. A player whose unsent frames pile up past {@link #MAX_BACKLOG} bytes is
+ * dropped rather than slowing the broadcast for everyone else.
+ */
+public class RoomServer implements Runnable, Closeable {
+    // Bytes a slow player may have queued before being dropped
+    public static final int MAX_BACKLOG = 64 * 1024;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final CardGeometry geometry;
+    private final BingoEngine engine = new BingoEngine();
+    private final SplittableRandom seeds;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final Consumer<SelectionKey> keyHandler = this::handle;
+    // The frame being sent, encoded once per broadcast
+    private final ByteBuffer frame = ByteBuffer.allocate(RoomProtocol.MAX_FRAME);
+    private volatile boolean running = true;
+
+    // Selector thread only
+    private final List<Player> players = new ArrayList<>();
+    private final List<Player> seated = new ArrayList<>();
+
+    // Written by the selector thread only
+    private volatile int playerCount;
+    private volatile int joinedCount;
+    private volatile int seatedCount;
+    private volatile int drawCount;
+    private volatile long claimsAccepted;
+    private volatile long claimsRejected;
+    private volatile long droppedPlayers;
+
+    private static final class Player {
+        final SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(RoomProtocol.MAX_FRAME);
+        // Frames not yet written, from position 0
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        boolean joined;
+        boolean closed;
+        // Index of the player's card in the current game, -1 if not seated
+        int card = -1;
+
+        Player(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Opens the room's listening socket; call {@link #run()} to serve it.
+     *
+     * @param address  The address to listen on; port 0 picks a free port, see {@link #getPort()}.
+     * @param geometry The variant played in the room.
+     * @param seed     Seeds the games, so a room replays the same deals and calls.
+     */
+    public RoomServer(InetSocketAddress address, CardGeometry geometry, long seed) throws IOException {
+        this.geometry = geometry;
+        seeds = new SplittableRandom(seed);
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 4096);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(keyHandler);
+                Runnable command;
+                while ((command = commands.poll()) != null) {
+                    command.run();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Player player : players) {
+                closeQuietly(player.channel);
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Deals a new game to every player who has joined so far.
+     */
+    public void startGame() {
+        post(this::deal);
+    }
+
+    /**
+     * Calls the next number and broadcasts it to the seated players.
+     */
+    public void callNext() {
+        post(this::call);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getJoinedCount() {
+        return joinedCount;
+    }
+
+    public int getSeatedCount() {
+        return seatedCount;
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public long getClaimsAccepted() {
+        return claimsAccepted;
+    }
+
+    public long getClaimsRejected() {
+        return claimsRejected;
+    }
+
+    public long getDroppedPlayers() {
+        return droppedPlayers;
+    }
+
+    private void post(Runnable command) {
+        commands.add(command);
+        selector.wakeup();
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) return;
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Player player = (Player) key.attachment();
+        if (key.isReadable()) {
+            read(player);
+        }
+        if (!player.closed && key.isWritable()) {
+            writeBacklog(player);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Player player = new Player(channel);
+                player.key = channel.register(selector, SelectionKey.OP_READ, player);
+                players.add(player);
+                playerCount++;
+            }
+        } catch (IOException e) {
+            // The connection went away before it was set up; the listening socket is unaffected
+        }
+    }
+
+    private void read(Player player) {
+        ByteBuffer in = player.in;
+        try {
+            if (player.channel.read(in) < 0) {
+                drop(player);
+                return;
+            }
+        } catch (IOException e) {
+            drop(player);
+            return;
+        }
+        in.flip();
+        while (in.hasRemaining()) {
+            int start = in.position();
+            int length = in.get(start) & 0xFF;
+            if (in.remaining() < 1 + length) break;
+            if (length == 0) {
+                drop(player);
+                return;
+            }
+            int type = in.get(start + 1);
+            if (type == RoomProtocol.JOIN) {
+                if (!player.joined) {
+                    player.joined = true;
+                    joinedCount++;
+                }
+            } else if (type == RoomProtocol.CLAIM) {
+                verifyClaim(player);
+            } else {
+                drop(player);
+                return;
+            }
+            in.position(start + 1 + length);
+        }
+        in.compact();
+    }
+
+    /**
+     * Accepts a claim only when the player's issued card has completed an active pattern with the numbers called.
+     */
+    private void verifyClaim(Player player) {
+        CardSet cards = engine.getCards();
+        boolean accepted = player.card >= 0 && cards.hasWon(player.card);
+        if (accepted) {
+            claimsAccepted++;
+        } else {
+            claimsRejected++;
+        }
+        frame.clear();
+        frame.put((byte) RoomProtocol.RESULT_LENGTH);
+        frame.put((byte) RoomProtocol.RESULT);
+        frame.put((byte) (accepted ? 1 : 0));
+        frame.put((byte) (accepted ? cards.getWinningPattern(player.card) : -1));
+        frame.put((byte) engine.getDrawCount());
+        frame.flip();
+        send(player, frame);
+    }
+
+    private void deal() {
+        seated.clear();
+        int open = 0;
+        for (Player player : players) {
+            if (player.closed) continue;
+            players.set(open++, player);
+            player.card = -1;
+            if (player.joined) seated.add(player);
+        }
+        players.subList(open, players.size()).clear();
+        seatedCount = seated.size();
+        drawCount = 0;
+        if (seated.isEmpty()) return;
+
+        engine.newGame(geometry, seated.size(), seeds.nextLong());
+        CardSet cards = engine.getCards();
+        int cells = geometry.getCells();
+        for (int card = 0; card < seated.size(); card++) {
+            Player player = seated.get(card);
+            player.card = card;
+            frame.clear();
+            frame.put((byte) RoomProtocol.cardLength(cells));
+            frame.put((byte) RoomProtocol.CARD);
+            frame.put((byte) geometry.getId());
+            frame.putInt(card);
+            frame.put((byte) cells);
+            for (int cell = 0; cell < cells; cell++) {
+                frame.put((byte) cards.getNumber(card, cell));
+            }
+            frame.flip();
+            send(player, frame);
+        }
+    }
+
+    private void call() {
+        if (seated.isEmpty()) return;
+        int number = engine.draw();
+        if (number == 0) return;
+        drawCount = engine.getDrawCount();
+        frame.clear();
+        frame.put((byte) RoomProtocol.DRAW_LENGTH);
+        frame.put((byte) RoomProtocol.DRAW);
+        frame.put((byte) drawCount);
+        frame.put((byte) number);
+        frame.putLong(System.nanoTime());
+        frame.flip();
+        for (int i = 0, n = seated.size(); i < n; i++) {
+            send(seated.get(i), frame);
+        }
+    }
+
+    /**
+     * Writes a frame to a player, straight to the socket when nothing is queued ahead of it, and queues whatever the
+     * socket does not take. Leaves the frame's position unchanged so it can be sent to the next player.
+     */
+    private void send(Player player, ByteBuffer frame) {
+        if (player.closed) return;
+        int start = frame.position();
+        try {
+            if (player.out.position() == 0) {
+                player.channel.write(frame);
+                if (!frame.hasRemaining()) return;
+                player.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            if (player.out.remaining() < frame.remaining()) {
+                int needed = player.out.position() + frame.remaining();
+                if (needed > MAX_BACKLOG) {
+                    droppedPlayers++;
+                    drop(player);
+                    return;
+                }
+                ByteBuffer grown = ByteBuffer.allocate(Math.min(MAX_BACKLOG, Math.max(needed, player.out.capacity() * 2)));
+                player.out.flip();
+                grown.put(player.out);
+                player.out = grown;
+            }
+            player.out.put(frame);
+        } catch (IOException e) {
+            drop(player);
+        } finally {
+            frame.position(start);
+        }
+    }
+
+    private void writeBacklog(Player player) {
+        ByteBuffer out = player.out;
+        out.flip();
+        try {
+            player.channel.write(out);
+        } catch (IOException e) {
+            drop(player);
+            return;
+        }
+        out.compact();
+        if (out.position() == 0) {
+            player.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void drop(Player player) {
+        if (player.closed) return;
+        player.closed = true;
+        player.key.cancel();
+        closeQuietly(player.channel);
+        playerCount--;
+        if (player.joined) joinedCount--;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+}
@@ -21,3 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "BingoGame"
 include(":app")
+include(":engine")
+include(":benchmark")
+include(":simulator")
+include(":server")
@@ -0,0 +1,18 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":engine"))
+}
+
+// Run with: ./gradlew :simulator:run --args="--games 1000000000"  (see EconomySimulator for all options)
+application {
+    mainClass.set("ict.mgame.bingogame.simulator.EconomySimulator")
+    applicationDefaultJvmArgs = listOf("-Xmx512m")
+}
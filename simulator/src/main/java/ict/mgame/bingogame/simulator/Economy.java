@@ -0,0 +1,17 @@
+package ict.mgame.bingogame.simulator;
+
+/**
+ * The coin economy parameters. The defaults are the values hard-coded in MainActivity and DatabaseHelper.
+ */
+public class Economy {
+    public int drawCost = 1;
+    public int winReward = 50;
+    public long coinIntervalMs = 30000;
+    public int startingCoins = 20;
+
+    @Override
+    public String toString() {
+        return "draw cost " + drawCost + ", win reward " + winReward + ", 1 coin per " + coinIntervalMs
+                + " ms, " + startingCoins + " starting coins";
+    }
+}
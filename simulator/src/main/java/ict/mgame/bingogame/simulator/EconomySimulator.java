@@ -0,0 +1,217 @@
+package ict.mgame.bingogame.simulator;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.CoinAccrual;
+
+/**
+ * Headless Monte Carlo simulation of the coin economy. It plays a large number of single-card games to report the
+ * distribution of draws (and so coins spent) per win, then simulates timed play sessions to report the coin flow
+ * per hour. Work is split recursively across a ForkJoin pool; every task gets its own SplittableRandom stream split
+ * from the seed, so results depend only on the options and not on the thread count.
+ *
+ * <pre>
+ * Options (defaults in brackets):
+ *   --games N               single games for the draws-to-bingo distribution [100000000]
+ *   --sessions N            simulated play sessions [100000]
+ *   --session-minutes N     length of each session [60]
+ *   --draws-per-minute N    how fast the player taps Draw when they have coins [30]
+ *   --draw-cost N           [1]
+ *   --win-reward N          [50]
+ *   --coin-interval-ms N    passive income interval [30000]
+ *   --starting-coins N      [20]
+ *   --seed N                [42]
+ *   --threads N             [available processors]
+ * </pre>
+ */
+public class EconomySimulator {
+    // Games or sessions per leaf task
+    private static final long GAMES_PER_TASK = 1 << 16;
+    private static final long SESSIONS_PER_TASK = 64;
+
+    private static final long MS_PER_HOUR = 3600000;
+
+    private final Economy economy;
+    private final long sessionMs;
+    private final int drawsPerMinute;
+
+    public EconomySimulator(Economy economy, long sessionMs, int drawsPerMinute) {
+        this.economy = economy;
+        this.sessionMs = sessionMs;
+        this.drawsPerMinute = drawsPerMinute;
+    }
+
+    /**
+     * Results of one task; merged up the task tree.
+     */
+    public static class Results {
+        final Histogram drawsToBingo = new Histogram(1, BingoEngine.MAX_NUMBER, 1);
+        final Histogram sessionNetCoins = new Histogram(-1000, 20000, 10);
+        final Histogram sessionWins = new Histogram(0, 1000, 1);
+        long sessionDraws;
+        long sessionCoinsSpent;
+        long sessionCoinsWon;
+        long sessionPassiveCoins;
+        // Draw taps that found too few coins
+        long starvedTaps;
+
+        void merge(Results other) {
+            drawsToBingo.merge(other.drawsToBingo);
+            sessionNetCoins.merge(other.sessionNetCoins);
+            sessionWins.merge(other.sessionWins);
+            sessionDraws += other.sessionDraws;
+            sessionCoinsSpent += other.sessionCoinsSpent;
+            sessionCoinsWon += other.sessionCoinsWon;
+            sessionPassiveCoins += other.sessionPassiveCoins;
+            starvedTaps += other.starvedTaps;
+        }
+    }
+
+    /**
+     * Splits a run of games or sessions in halves until it is small enough to run as one leaf.
+     */
+    private class SimulationTask extends RecursiveTask<Results> {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean sessions;
+        private final long count;
+        private final SplittableRandom random;
+
+        SimulationTask(boolean sessions, long count, SplittableRandom random) {
+            this.sessions = sessions;
+            this.count = count;
+            this.random = random;
+        }
+
+        @Override
+        protected Results compute() {
+            if (count <= (sessions ? SESSIONS_PER_TASK : GAMES_PER_TASK)) {
+                Results results = new Results();
+                GameSimulator game = new GameSimulator();
+                for (long i = 0; i < count; i++) {
+                    if (sessions) {
+                        playSession(game, random, results);
+                    } else {
+                        results.drawsToBingo.record(game.playToBingo(random));
+                    }
+                }
+                return results;
+            }
+            long half = count / 2;
+            SimulationTask left = new SimulationTask(sessions, half, random.split());
+            SimulationTask right = new SimulationTask(sessions, count - half, random.split());
+            left.fork();
+            Results results = right.compute();
+            results.merge(left.join());
+            return results;
+        }
+    }
+
+    /**
+     * Plays one session: the player taps Draw at a steady rate, paying for each draw while they can afford it, and
+     * starts a new game after every win. Passive income accrues as in MainActivity.
+     */
+    void playSession(GameSimulator game, SplittableRandom random, Results results) {
+        CoinAccrual wallet = new CoinAccrual(economy.startingCoins, 0, economy.coinIntervalMs);
+        long tapIntervalMs = 60000 / drawsPerMinute;
+        int drawsLeft = game.playToBingo(random);
+        int wins = 0;
+        for (long now = 0; now < sessionMs; now += tapIntervalMs) {
+            if (wallet.balance(now) < economy.drawCost) {
+                results.starvedTaps++;
+                continue;
+            }
+            results.sessionPassiveCoins += wallet.materialize(now);
+            wallet.add(-economy.drawCost);
+            results.sessionCoinsSpent += economy.drawCost;
+            results.sessionDraws++;
+            if (--drawsLeft == 0) {
+                wallet.add(economy.winReward);
+                results.sessionCoinsWon += economy.winReward;
+                wins++;
+                drawsLeft = game.playToBingo(random);
+            }
+        }
+        results.sessionPassiveCoins += wallet.materialize(sessionMs);
+        results.sessionNetCoins.record(wallet.getStoredCoins() - economy.startingCoins);
+        results.sessionWins.record(wins);
+    }
+
+    public Results simulateGames(ForkJoinPool pool, long games, long seed) {
+        return pool.invoke(new SimulationTask(false, games, new SplittableRandom(seed)));
+    }
+
+    public Results simulateSessions(ForkJoinPool pool, long sessions, long seed) {
+        return pool.invoke(new SimulationTask(true, sessions, new SplittableRandom(seed)));
+    }
+
+    public static void main(String[] args) {
+        Economy economy = new Economy();
+        long games = 100000000L;
+        long sessions = 100000;
+        long sessionMinutes = 60;
+        int drawsPerMinute = 30;
+        long seed = 42;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--games": games = Long.parseLong(value); break;
+                    case "--sessions": sessions = Long.parseLong(value); break;
+                    case "--session-minutes": sessionMinutes = Long.parseLong(value); break;
+                    case "--draws-per-minute": drawsPerMinute = Integer.parseInt(value); break;
+                    case "--draw-cost": economy.drawCost = Integer.parseInt(value); break;
+                    case "--win-reward": economy.winReward = Integer.parseInt(value); break;
+                    case "--coin-interval-ms": economy.coinIntervalMs = Long.parseLong(value); break;
+                    case "--starting-coins": economy.startingCoins = Integer.parseInt(value); break;
+                    case "--seed": seed = Long.parseLong(value); break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+            System.err.println("See the EconomySimulator class comment for the options.");
+            System.exit(2);
+        }
+
+        PrintStream out = System.out;
+        EconomySimulator simulator = new EconomySimulator(economy, sessionMinutes * 60000, drawsPerMinute);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        out.println("Economy: " + economy);
+        out.println("Threads: " + threads + ", seed: " + seed);
+
+        long start = System.nanoTime();
+        Results gameResults = simulator.simulateGames(pool, games, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("%n%d games in %.1f s (%.0f games/s)%n%n", games, seconds, games / seconds);
+        Histogram draws = gameResults.drawsToBingo;
+        gameResults.drawsToBingo.print(out, "draws");
+        out.printf("%nDraws to bingo: mean %.3f, p50 %d, p90 %d, p99 %d%n", draws.getMean(),
+                draws.getPercentile(50), draws.getPercentile(90), draws.getPercentile(99));
+        out.printf("Coins spent per win: mean %.3f, p50 %d, p90 %d, p99 %d (net %+.3f per win)%n",
+                draws.getMean() * economy.drawCost, draws.getPercentile(50) * economy.drawCost,
+                draws.getPercentile(90) * economy.drawCost, draws.getPercentile(99) * economy.drawCost,
+                economy.winReward - draws.getMean() * economy.drawCost);
+
+        start = System.nanoTime();
+        Results sessionResults = simulator.simulateSessions(pool, sessions, seed + 1);
+        seconds = (System.nanoTime() - start) / 1e9;
+        double hours = sessions * (double) simulator.sessionMs / MS_PER_HOUR;
+        out.printf("%n%d sessions of %d min at %d draws/min in %.1f s%n%n", sessions, sessionMinutes,
+                drawsPerMinute, seconds);
+        sessionResults.sessionNetCoins.print(out, "net coins");
+        out.printf("%nPer hour: %.2f draws, %.2f wins, %.2f coins spent, %.2f won, %.2f passive, %+.2f net%n",
+                sessionResults.sessionDraws / hours, sessionResults.sessionWins.getMean() * sessions / hours,
+                sessionResults.sessionCoinsSpent / hours, sessionResults.sessionCoinsWon / hours,
+                sessionResults.sessionPassiveCoins / hours, sessionResults.sessionNetCoins.getMean() * sessions / hours);
+        out.printf("Taps without enough coins: %.2f%%%n", 100.0 * sessionResults.starvedTaps
+                / Math.max(1, sessionResults.starvedTaps + sessionResults.sessionDraws));
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,66 @@
+package ict.mgame.bingogame.simulator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import ict.mgame.bingogame.engine.BingoEngine;
+import ict.mgame.bingogame.engine.PatternRegistry;
+
+/**
+ * Plays single-card games to the first bingo with no allocation per game. Not thread-safe; each simulation task
+ * owns one, together with its own random stream.
+ */
+public class GameSimulator {
+    private static final int COLUMN_RANGE = BingoEngine.MAX_NUMBER / BingoEngine.SIZE;
+
+    // Both arrays always hold a permutation of 1..75. A Fisher-Yates pass over any permutation is uniform, so they
+    // are reshuffled in place and never refilled.
+    private final int[] columnPool = new int[BingoEngine.MAX_NUMBER];
+    private final int[] deck = new int[BingoEngine.MAX_NUMBER];
+    // The cell holding each number on the current card, or -1
+    private final int[] cellOf = new int[BingoEngine.MAX_NUMBER + 1];
+
+    public GameSimulator() {
+        for (int i = 0; i < BingoEngine.MAX_NUMBER; i++) {
+            columnPool[i] = i + 1;
+            deck[i] = i + 1;
+        }
+    }
+
+    /**
+     * Deals a card the way BingoEngine.generateCard does (five numbers per column from that column's range of 15,
+     * FREE in the centre) and calls numbers until a line is complete.
+     *
+     * @return The number of draws it took, 1-75.
+     */
+    public int playToBingo(SplittableRandom random) {
+        Arrays.fill(cellOf, -1);
+        for (int col = 0; col < BingoEngine.SIZE; col++) {
+            int base = col * COLUMN_RANGE;
+            // Partial Fisher-Yates: the first five slots of the column's segment become its numbers. Their row order
+            // is random rather than sorted, which does not change the outcome since the call order is uniform.
+            for (int row = 0; row < BingoEngine.SIZE; row++) {
+                int j = base + row + random.nextInt(COLUMN_RANGE - row);
+                int number = columnPool[j];
+                columnPool[j] = columnPool[base + row];
+                columnPool[base + row] = number;
+                int cell = row * BingoEngine.SIZE + col;
+                if (cell != BingoEngine.FREE_CELL) cellOf[number] = cell;
+            }
+        }
+
+        long marked = 1L << BingoEngine.FREE_CELL;
+        for (int i = 0; i < BingoEngine.MAX_NUMBER; i++) {
+            // Lazy Fisher-Yates: pick the next call from the rest of the deck
+            int j = i + random.nextInt(BingoEngine.MAX_NUMBER - i);
+            int number = deck[j];
+            deck[j] = deck[i];
+            deck[i] = number;
+            int cell = cellOf[number];
+            if (cell < 0) continue;
+            marked |= 1L << cell;
+            if (PatternRegistry.STANDARD.matchThrough(marked, cell) >= 0) return i + 1;
+        }
+        return BingoEngine.MAX_NUMBER;
+    }
+}
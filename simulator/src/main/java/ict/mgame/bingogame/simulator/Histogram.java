@@ -0,0 +1,76 @@
+package ict.mgame.bingogame.simulator;
+
+import java.io.PrintStream;
+
+/**
+ * Counts of integer values in fixed-width buckets over [min, max]; values outside the range land in the end buckets.
+ * Each simulation task fills its own histogram and the results are merged, so no counting is shared between threads.
+ */
+public class Histogram {
+    private final long min;
+    private final long bucketWidth;
+    private final long[] counts;
+    private long total;
+    private double sum;
+
+    public Histogram(long min, long max, long bucketWidth) {
+        this.min = min;
+        this.bucketWidth = bucketWidth;
+        counts = new long[(int) ((max - min) / bucketWidth) + 1];
+    }
+
+    public void record(long value) {
+        long bucket = (value - min) / bucketWidth;
+        if (value < min) bucket = 0;
+        if (bucket >= counts.length) bucket = counts.length - 1;
+        counts[(int) bucket]++;
+        total++;
+        sum += value;
+    }
+
+    /**
+     * Adds another histogram with the same bucket layout into this one.
+     */
+    public void merge(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public double getMean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Returns the lower bound of the bucket holding the given percentile (0-100).
+     */
+    public long getPercentile(double percentile) {
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) return min + i * bucketWidth;
+        }
+        return min + (counts.length - 1) * bucketWidth;
+    }
+
+    /**
+     * Prints each non-empty bucket with its count, share and cumulative share.
+     */
+    public void print(PrintStream out, String label) {
+        out.printf("%12s %16s %8s %8s%n", label, "count", "%", "cum %");
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            seen += counts[i];
+            out.printf("%12d %16d %8.3f %8.3f%n", min + i * bucketWidth, counts[i],
+                    100.0 * counts[i] / total, 100.0 * seen / total);
+        }
+    }
+}